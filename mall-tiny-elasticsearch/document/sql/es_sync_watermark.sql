@@ -0,0 +1,46 @@
+-- 商品增量同步依赖的修改时间，行被修改时由MySQL自动更新，(update_time, id)索引用于按水位分页读取变更
+ALTER TABLE `pms_product`
+  ADD COLUMN `update_time` datetime(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT '修改时间',
+  ADD KEY `idx_update_time_id` (`update_time`, `id`);
+
+-- 商品属性值保存在单独的表中，修改时同步更新商品的修改时间，让增量同步重新索引该商品
+DELIMITER $$
+CREATE TRIGGER `pms_product_attribute_value_insert` AFTER INSERT ON `pms_product_attribute_value` FOR EACH ROW
+BEGIN
+  UPDATE `pms_product` SET `update_time` = CURRENT_TIMESTAMP(3) WHERE `id` = NEW.`product_id`;
+END$$
+CREATE TRIGGER `pms_product_attribute_value_update` AFTER UPDATE ON `pms_product_attribute_value` FOR EACH ROW
+BEGIN
+  UPDATE `pms_product` SET `update_time` = CURRENT_TIMESTAMP(3) WHERE `id` = NEW.`product_id`;
+END$$
+CREATE TRIGGER `pms_product_attribute_value_delete` AFTER DELETE ON `pms_product_attribute_value` FOR EACH ROW
+BEGIN
+  UPDATE `pms_product` SET `update_time` = CURRENT_TIMESTAMP(3) WHERE `id` = OLD.`product_id`;
+END$$
+DELIMITER ;
+
+-- 索引中的属性名称和类型来自pms_product_attribute，修改或删除属性时更新所有使用该属性的商品的修改时间，
+-- 只在名称或类型变化时触发；被大量商品使用的属性会在一个语句中更新这些商品，并让增量同步重新索引它们
+DELIMITER $$
+CREATE TRIGGER `pms_product_attribute_update` AFTER UPDATE ON `pms_product_attribute` FOR EACH ROW
+BEGIN
+  IF NOT (NEW.`name` <=> OLD.`name`) OR NOT (NEW.`type` <=> OLD.`type`) THEN
+    UPDATE `pms_product` SET `update_time` = CURRENT_TIMESTAMP(3) WHERE `id` IN (
+      SELECT `product_id` FROM `pms_product_attribute_value` WHERE `product_attribute_id` = NEW.`id`);
+  END IF;
+END$$
+CREATE TRIGGER `pms_product_attribute_delete` AFTER DELETE ON `pms_product_attribute` FOR EACH ROW
+BEGIN
+  UPDATE `pms_product` SET `update_time` = CURRENT_TIMESTAMP(3) WHERE `id` IN (
+    SELECT `product_id` FROM `pms_product_attribute_value` WHERE `product_attribute_id` = OLD.`id`);
+END$$
+DELIMITER ;
+
+-- 增量同步的水位，记录已同步的最后一个商品的修改时间和ID，重启后从该位置继续
+CREATE TABLE `es_sync_watermark` (
+  `name` varchar(64) NOT NULL COMMENT '同步任务名称',
+  `last_update_time` datetime(3) NOT NULL COMMENT '已同步的最后一个商品的修改时间',
+  `last_id` bigint(20) NOT NULL COMMENT '已同步的最后一个商品的ID',
+  `update_time` datetime(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT '水位更新时间',
+  PRIMARY KEY (`name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='Elasticsearch增量同步水位';
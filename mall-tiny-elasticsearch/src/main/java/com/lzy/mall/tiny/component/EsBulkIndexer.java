@@ -0,0 +1,280 @@
+package com.lzy.mall.tiny.component;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.UncategorizedElasticsearchException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 并行批量写入Elasticsearch：按文档数和序列化后的字节数切分bulk请求，同时最多有concurrency个请求在执行，
+ * 已满时添加文档的线程会阻塞等待，避免读取数据库的速度远超写入速度时批次在内存中堆积
+ * 被Elasticsearch以429拒绝的文档按指数退避重试，其他失败的文档只记录日志和计数
+ */
+@Component
+public class EsBulkIndexer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EsBulkIndexer.class);
+    //bulk请求中每个文档的action行和换行符大致占用的字节数
+    private static final int ACTION_OVERHEAD_BYTES = 64;
+
+    @Autowired
+    private ElasticsearchOperations elasticsearchOperations;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${elasticsearch.bulk.max-docs:1000}")
+    private Integer maxDocs;
+    @Value("${elasticsearch.bulk.max-bytes:5MB}")
+    private DataSize maxBytes;
+    @Value("${elasticsearch.bulk.concurrency:4}")
+    private Integer concurrency;
+    @Value("${elasticsearch.bulk.max-retries:5}")
+    private Integer maxRetries;
+    @Value("${elasticsearch.bulk.initial-backoff:100ms}")
+    private Duration initialBackoff;
+    @Value("${elasticsearch.bulk.max-backoff:5s}")
+    private Duration maxBackoff;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "es-bulk-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 开始一次批量写入，写入完成后需要调用{@link Session#finish()}
+     */
+    public Session open(Class<?> entityClass) {
+        return new Session(elasticsearchOperations.getIndexCoordinatesFor(entityClass));
+    }
+
+    /**
+     * 一次批量写入，add方法只能由一个线程调用
+     */
+    public class Session {
+        private final IndexCoordinates index;
+        private final Semaphore inFlight = new Semaphore(concurrency);
+        private final LongAdder indexed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final long startNanos = System.nanoTime();
+        private List<IndexQuery> queries = new ArrayList<>();
+        private long bytes;
+        private int batches;
+
+        private Session(IndexCoordinates index) {
+            this.index = index;
+        }
+
+        /**
+         * 添加一个文档，达到批次的文档数或字节数上限时提交bulk请求
+         */
+        public void add(String id, Object entity) {
+            String source = elasticsearchOperations.getElasticsearchConverter().mapObject(entity).toJson();
+            long docBytes = source.getBytes(StandardCharsets.UTF_8).length + ACTION_OVERHEAD_BYTES;
+            //超过字节数上限的单个文档单独作为一批
+            if (!queries.isEmpty() && bytes + docBytes > maxBytes.toBytes()) {
+                flush();
+            }
+            queries.add(new IndexQueryBuilder().withId(id).withSource(source).build());
+            bytes += docBytes;
+            if (queries.size() >= maxDocs) {
+                flush();
+            }
+        }
+
+        /**
+         * 提交剩余文档并等待所有bulk请求完成，返回写入结果
+         */
+        public Result finish() {
+            if (!queries.isEmpty()) {
+                flush();
+            }
+            inFlight.acquireUninterruptibly(concurrency);
+            inFlight.release(concurrency);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            Result result = new Result(indexed.sum(), failed.sum(), batches, elapsedMillis,
+                    indexed.sum() * 1000.0 / Math.max(elapsedMillis, 1));
+            LOGGER.info("bulk index finished, index:{}, indexed:{}, failed:{}, batches:{}, elapsed:{}ms, docs/s:{}",
+                    index.getIndexName(), result.getIndexed(), result.getFailed(), result.getBatches(),
+                    result.getElapsedMillis(), String.format("%.1f", result.getDocsPerSecond()));
+            return result;
+        }
+
+        private void flush() {
+            List<IndexQuery> batch = queries;
+            long batchBytes = bytes;
+            queries = new ArrayList<>();
+            bytes = 0;
+            batches++;
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for bulk request", e);
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        indexBatch(batch, batchBytes);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                inFlight.release();
+                throw e;
+            }
+        }
+
+        private void indexBatch(List<IndexQuery> batch, long batchBytes) {
+            long start = System.nanoTime();
+            List<IndexQuery> pending = batch;
+            for (int attempt = 0; ; attempt++) {
+                pending = execute(pending);
+                if (pending.isEmpty()) {
+                    break;
+                }
+                if (attempt >= maxRetries) {
+                    LOGGER.warn("bulk index rejected after {} retries, index:{}, docs:{}", maxRetries, index.getIndexName(), pending.size());
+                    countFailed(pending.size());
+                    break;
+                }
+                meterRegistry.counter("es.bulk.retries", "index", index.getIndexName()).increment();
+                try {
+                    Thread.sleep(backoffMillis(attempt));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    countFailed(pending.size());
+                    break;
+                }
+            }
+            long latencyNanos = System.nanoTime() - start;
+            meterRegistry.timer("es.bulk.latency", "index", index.getIndexName()).record(latencyNanos, TimeUnit.NANOSECONDS);
+            meterRegistry.summary("es.bulk.bytes", "index", index.getIndexName()).record(batchBytes);
+            LOGGER.debug("bulk batch finished, index:{}, docs:{}, bytes:{}, latency:{}ms",
+                    index.getIndexName(), batch.size(), batchBytes, TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        }
+
+        /**
+         * 执行一次bulk请求，返回被429拒绝需要重试的文档
+         */
+        private List<IndexQuery> execute(List<IndexQuery> batch) {
+            try {
+                elasticsearchOperations.bulkIndex(batch, index);
+                countIndexed(batch.size());
+                return Collections.emptyList();
+            } catch (BulkFailureException e) {
+                Map<String, BulkFailureException.FailureDetails> failedDocuments = e.getFailedDocuments();
+                List<IndexQuery> rejected = new ArrayList<>();
+                int failedCount = 0;
+                for (IndexQuery query : batch) {
+                    BulkFailureException.FailureDetails details = failedDocuments.get(query.getId());
+                    if (details == null) {
+                        continue;
+                    }
+                    if (Integer.valueOf(HttpStatus.TOO_MANY_REQUESTS.value()).equals(details.status())) {
+                        rejected.add(query);
+                    } else {
+                        failedCount++;
+                        LOGGER.warn("bulk index document failed, index:{}, id:{}, error:{}", index.getIndexName(), query.getId(), details.errorMessage());
+                    }
+                }
+                countIndexed(batch.size() - rejected.size() - failedCount);
+                countFailed(failedCount);
+                return rejected;
+            } catch (RuntimeException e) {
+                if (isTooManyRequests(e)) {
+                    return batch;
+                }
+                LOGGER.warn("bulk index failed, index:{}, docs:{}", index.getIndexName(), batch.size(), e);
+                countFailed(batch.size());
+                return Collections.emptyList();
+            }
+        }
+
+        private void countIndexed(int count) {
+            indexed.add(count);
+            meterRegistry.counter("es.bulk.docs", "index", index.getIndexName(), "result", "indexed").increment(count);
+        }
+
+        private void countFailed(int count) {
+            failed.add(count);
+            meterRegistry.counter("es.bulk.docs", "index", index.getIndexName(), "result", "failed").increment(count);
+        }
+    }
+
+    /**
+     * 第attempt次重试前的等待时间，在指数退避时间的一半到全部之间随机取值，避免并行的请求同时重试
+     */
+    private long backoffMillis(int attempt) {
+        long backoff = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * 整个bulk请求是否因Elasticsearch写入队列已满被拒绝
+     */
+    private boolean isTooManyRequests(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UncategorizedElasticsearchException
+                    && Integer.valueOf(HttpStatus.TOO_MANY_REQUESTS.value()).equals(((UncategorizedElasticsearchException) cause).getStatusCode())) {
+                return true;
+            }
+            if (cause instanceof ElasticsearchException
+                    && ((ElasticsearchException) cause).status() == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一次批量写入的结果
+     */
+    @Data
+    public static class Result {
+        private final long indexed;
+        private final long failed;
+        private final int batches;
+        private final long elapsedMillis;
+        private final double docsPerSecond;
+    }
+}
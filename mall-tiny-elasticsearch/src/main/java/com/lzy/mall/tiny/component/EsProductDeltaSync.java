@@ -0,0 +1,83 @@
+package com.lzy.mall.tiny.component;
+
+import com.lzy.mall.tiny.service.EsProductService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品索引的定时增量同步：按修改时间和ID的水位读取变更的商品，写入已上架的商品并删除已删除和已下架的商品
+ * 水位保存在数据库中，重启后从上次同步的位置继续；多个节点通过水位的行锁依次同步，不会重复处理同一批变更
+ * 每隔reconcile-interval重新同步水位之前reconcile-window内变更的商品，补上提交晚于lag-seconds而被水位跳过的变更
+ */
+@Component
+@ConditionalOnProperty(prefix = "elasticsearch.sync", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class EsProductDeltaSync implements InitializingBean, DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EsProductDeltaSync.class);
+
+    @Autowired
+    private EsProductService esProductService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${elasticsearch.sync.interval:10s}")
+    private Duration interval;
+    @Value("${elasticsearch.sync.batch-size:500}")
+    private Integer batchSize;
+    @Value("${elasticsearch.sync.reconcile-interval:5m}")
+    private Duration reconcileInterval;
+
+    private ScheduledExecutorService executor;
+    private Counter syncedCounter;
+    private Counter reconciledCounter;
+
+    @Override
+    public void afterPropertiesSet() {
+        syncedCounter = Counter.builder("es.sync.products").register(meterRegistry);
+        reconciledCounter = Counter.builder("es.sync.reconciled.products").register(meterRegistry);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "es-product-delta-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sync, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::reconcile, reconcileInterval.toMillis(), reconcileInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void sync() {
+        try {
+            //一批处理满时继续同步，直到没有新的变更
+            int count;
+            do {
+                count = esProductService.syncChanges();
+                syncedCounter.increment(count);
+            } while (count >= batchSize);
+        } catch (Exception e) {
+            LOGGER.warn("sync product to elasticsearch failed", e);
+        }
+    }
+
+    private void reconcile() {
+        try {
+            reconciledCounter.increment(esProductService.reconcileChanges());
+        } catch (Exception e) {
+            LOGGER.warn("reconcile product to elasticsearch failed", e);
+        }
+    }
+}
@@ -1,12 +1,39 @@
 package com.lzy.mall.tiny.dao;
 
+import com.lzy.mall.tiny.domain.EsProductChange;
 import com.lzy.mall.tiny.nosql.elasticsearch.document.EsProduct;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @Mapper
 public interface EsProductDao {
     List<EsProduct> getAllEsProductList(@Param("id") Long id);
+
+    /**
+     * 以游标方式逐个读取所有已上架的商品，需要在事务中使用，读取完毕前连接保持打开
+     */
+    Cursor<EsProduct> cursorAllEsProductList();
+
+    /**
+     * 按修改时间和ID的顺序读取水位之后发生变更的商品
+     */
+    List<EsProductChange> getChangedProductList(@Param("updateTime") Date updateTime, @Param("id") Long id,
+                                                @Param("lagSeconds") Integer lagSeconds, @Param("limit") Integer limit);
+
+    /**
+     * 按修改时间和ID的顺序读取(from, to]区间内发生变更的商品
+     */
+    List<EsProductChange> getReconcileProductList(@Param("fromTime") Date fromTime, @Param("fromId") Long fromId,
+                                                  @Param("toTime") Date toTime, @Param("toId") Long toId,
+                                                  @Param("limit") Integer limit);
+
+    /**
+     * 根据ID批量读取已上架的商品
+     */
+    List<EsProduct> getEsProductListByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,22 @@
+package com.lzy.mall.tiny.dao;
+
+import com.lzy.mall.tiny.domain.EsSyncWatermark;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+
+@Mapper
+public interface EsSyncWatermarkDao {
+    /**
+     * 水位不存在时从最早的时间开始创建
+     */
+    int insertIfAbsent(@Param("name") String name);
+
+    /**
+     * 读取水位并加行锁，事务提交前其他节点无法读取同一个水位
+     */
+    EsSyncWatermark selectForUpdate(@Param("name") String name);
+
+    int update(@Param("name") String name, @Param("lastUpdateTime") Date lastUpdateTime, @Param("lastId") Long lastId);
+}
@@ -0,0 +1,23 @@
+package com.lzy.mall.tiny.domain;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 增量同步读取的商品变更，只包含判断索引还是删除所需的字段
+ */
+@Data
+public class EsProductChange {
+    private Long id;
+    private Integer deleteStatus;
+    private Integer publishStatus;
+    private Date updateTime;
+
+    /**
+     * 未删除且已上架的商品需要写入索引，其他商品需要从索引中删除
+     */
+    public boolean isSearchable() {
+        return Integer.valueOf(0).equals(deleteStatus) && Integer.valueOf(1).equals(publishStatus);
+    }
+}
@@ -0,0 +1,15 @@
+package com.lzy.mall.tiny.domain;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 增量同步的水位，(lastUpdateTime, lastId)之前的商品变更都已同步
+ */
+@Data
+public class EsSyncWatermark {
+    private String name;
+    private Date lastUpdateTime;
+    private Long lastId;
+}
@@ -15,6 +15,16 @@ public interface EsProductService {
      */
     int importAll();
 
+    /**
+     * 同步水位之后发生变更的一批商品，返回处理的商品数量
+     */
+    int syncChanges();
+
+    /**
+     * 重新同步水位之前一段时间窗口内变更的商品，补上提交晚于同步延迟的事务，返回处理的商品数量
+     */
+    int reconcileChanges();
+
     /**
      * 根据id删除商品
      */
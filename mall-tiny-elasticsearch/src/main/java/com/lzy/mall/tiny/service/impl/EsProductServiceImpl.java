@@ -1,53 +1,153 @@
 package com.lzy.mall.tiny.service.impl;
 
+import com.lzy.mall.tiny.component.EsBulkIndexer;
 import com.lzy.mall.tiny.dao.EsProductDao;
+import com.lzy.mall.tiny.dao.EsSyncWatermarkDao;
+import com.lzy.mall.tiny.domain.EsProductChange;
+import com.lzy.mall.tiny.domain.EsSyncWatermark;
 import com.lzy.mall.tiny.nosql.elasticsearch.document.EsProduct;
 import com.lzy.mall.tiny.nosql.elasticsearch.repository.EsProductRepository;
 import com.lzy.mall.tiny.service.EsProductService;
+import org.apache.ibatis.cursor.Cursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Date;
 import java.util.List;
 
 
 @Service
 public class EsProductServiceImpl implements EsProductService {
     private static final Logger LOGGER = LoggerFactory.getLogger(EsProductServiceImpl.class);
+    private static final String SYNC_WATERMARK_NAME = "pms_product";
     @Autowired
     private EsProductDao productDao;
     @Autowired
     private EsProductRepository productRepository;
+    @Autowired
+    private EsBulkIndexer esBulkIndexer;
+    @Autowired
+    private EsSyncWatermarkDao syncWatermarkDao;
+    @Value("${elasticsearch.sync.batch-size:500}")
+    private Integer syncBatchSize;
+    @Value("${elasticsearch.sync.lag-seconds:5}")
+    private Integer syncLagSeconds;
+    @Value("${elasticsearch.sync.reconcile-window:10m}")
+    private Duration syncReconcileWindow;
 
     //将数据库中的所有商品数据迁移（或同步）到 Elasticsearch 中
+    //以游标方式逐个读取商品，交给EsBulkIndexer按批并行写入，写入跟不上时读取会阻塞，内存中只保存正在写入的批次
+    //游标需要在事务中读取，事务结束前数据库连接不会被释放
+    @Transactional(readOnly = true)
     @Override
     public int importAll() {
-        // 1. 从数据库查询所有需要导入到Elasticsearch的商品数据
-        List<EsProduct> esProductList = productDao.getAllEsProductList(null);
-
-        // 2. 将查询到的商品列表批量保存到Elasticsearch
-        // productRepository 是一个 Spring Data Elasticsearch Repository，
-        // 它提供了与Elasticsearch交互的标准方法，saveAll用于批量保存,saveAll方法返回的是一个Iterable迭代器，表示成功保存的文档集合
-        Iterable<EsProduct> esProductIterable = productRepository.saveAll(esProductList);
-
-        // 3. 统计成功导入到Elasticsearch的商品数量
-        //esProductIterable.iterator(): 获取 esProductIterable 集合的迭代器
-        Iterator<EsProduct> iterator = esProductIterable.iterator();
-        int result = 0;
-        while (iterator.hasNext()) {
-            result++;
-            iterator.next(); // 移动到下一个元素，next()方法的调用是必须的，否则hasNext()永远是true
+        // 1. 开始一次批量写入，批次大小和并发数由elasticsearch.bulk配置
+        EsBulkIndexer.Session session = esBulkIndexer.open(EsProduct.class);
+        // 2. 以游标方式从数据库逐个读取需要导入到Elasticsearch的商品数据，添加到批量写入中
+        try (Cursor<EsProduct> cursor = productDao.cursorAllEsProductList()) {
+            for (EsProduct esProduct : cursor) {
+                session.add(String.valueOf(esProduct.getId()), esProduct);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("close product cursor failed", e);
         }
-
+        // 3. 提交最后一批并等待所有bulk请求完成
+        EsBulkIndexer.Result result = session.finish();
         // 4. 返回成功导入的商品数量
-        return result;
+        return (int) result.getIndexed();
+    }
+
+    //在一个事务中读取并锁定水位、同步一批变更的商品、推进水位，多个节点同时执行时依次处理
+    //写入失败时回滚事务，水位不变，下次从同一位置重试
+    @Transactional
+    @Override
+    public int syncChanges() {
+        // 1. 读取水位并加锁，第一次同步时先创建水位
+        syncWatermarkDao.insertIfAbsent(SYNC_WATERMARK_NAME);
+        EsSyncWatermark watermark = syncWatermarkDao.selectForUpdate(SYNC_WATERMARK_NAME);
+        // 2. 读取水位之后变更的一批商品
+        List<EsProductChange> changes = productDao.getChangedProductList(watermark.getLastUpdateTime(),
+                watermark.getLastId(), syncLagSeconds, syncBatchSize);
+        if (changes.isEmpty()) {
+            return 0;
+        }
+        // 3. 写入已上架的商品，删除已删除和已下架的商品，有写入失败的商品时回滚，不推进水位
+        int indexed = apply(changes);
+        // 4. 将水位推进到这一批中的最后一个商品
+        EsProductChange last = changes.get(changes.size() - 1);
+        syncWatermarkDao.update(SYNC_WATERMARK_NAME, last.getUpdateTime(), last.getId());
+        LOGGER.info("sync product to elasticsearch, indexed:{}, deleted:{}, watermark:{}/{}",
+                indexed, changes.size() - indexed, last.getUpdateTime(), last.getId());
+        return changes.size();
+    }
+
+    //修改时间在事务中生成，提交晚于lag-seconds的事务会以早于水位的修改时间出现，增量同步不会再读取到
+    //定时重新同步水位之前reconcile-window内变更的商品，重复写入和删除的结果相同
+    //持有水位的行锁执行，避免与增量同步并发写入同一个商品时用旧数据覆盖新数据
+    @Transactional
+    @Override
+    public int reconcileChanges() {
+        // 1. 读取水位并加锁，与增量同步依次执行；还没有同步过时水位为最早的时间，窗口内没有商品
+        syncWatermarkDao.insertIfAbsent(SYNC_WATERMARK_NAME);
+        EsSyncWatermark watermark = syncWatermarkDao.selectForUpdate(SYNC_WATERMARK_NAME);
+        Date fromTime = new Date(watermark.getLastUpdateTime().getTime() - syncReconcileWindow.toMillis());
+        Long fromId = 0L;
+        // 2. 按(update_time, id)顺序分批读取时间窗口内变更的商品，直到水位为止
+        int count = 0;
+        List<EsProductChange> changes;
+        do {
+            changes = productDao.getReconcileProductList(fromTime, fromId, watermark.getLastUpdateTime(),
+                    watermark.getLastId(), syncBatchSize);
+            if (changes.isEmpty()) {
+                break;
+            }
+            apply(changes);
+            count += changes.size();
+            EsProductChange last = changes.get(changes.size() - 1);
+            fromTime = last.getUpdateTime();
+            fromId = last.getId();
+        } while (changes.size() >= syncBatchSize);
+        LOGGER.info("reconcile product to elasticsearch, count:{}, watermark:{}/{}",
+                count, watermark.getLastUpdateTime(), watermark.getLastId());
+        return count;
+    }
+
+    /**
+     * 按状态写入已上架的商品，删除已删除和已下架的商品，有写入失败的商品时抛出异常，返回写入索引的商品数量
+     */
+    private int apply(List<EsProductChange> changes) {
+        List<Long> indexIds = new ArrayList<>();
+        List<Long> deleteIds = new ArrayList<>();
+        for (EsProductChange change : changes) {
+            if (change.isSearchable()) {
+                indexIds.add(change.getId());
+            } else {
+                deleteIds.add(change.getId());
+            }
+        }
+        if (!indexIds.isEmpty()) {
+            EsBulkIndexer.Session session = esBulkIndexer.open(EsProduct.class);
+            for (EsProduct esProduct : productDao.getEsProductListByIds(indexIds)) {
+                session.add(String.valueOf(esProduct.getId()), esProduct);
+            }
+            EsBulkIndexer.Result result = session.finish();
+            if (result.getFailed() > 0) {
+                throw new IllegalStateException("sync product to elasticsearch failed, count:" + result.getFailed());
+            }
+        }
+        delete(deleteIds);
+        return indexIds.size();
     }
 
     @Override
@@ -0,0 +1,150 @@
+package com.lzy.mall.tiny.elasticsearch;
+
+import com.lzy.mall.tiny.component.EsBulkIndexer;
+import com.lzy.mall.tiny.dao.EsProductDao;
+import com.lzy.mall.tiny.dao.EsSyncWatermarkDao;
+import com.lzy.mall.tiny.domain.EsProductChange;
+import com.lzy.mall.tiny.domain.EsSyncWatermark;
+import com.lzy.mall.tiny.nosql.elasticsearch.document.EsProduct;
+import com.lzy.mall.tiny.nosql.elasticsearch.repository.EsProductRepository;
+import com.lzy.mall.tiny.service.impl.EsProductServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品索引的增量同步：按状态区分写入和删除、写入成功后推进水位，以及重新扫描水位之前的时间窗口
+ */
+class EsProductSyncTests {
+    private static final String WATERMARK_NAME = "pms_product";
+    private static final int BATCH_SIZE = 2;
+
+    private EsProductServiceImpl esProductService;
+    private EsProductDao productDao;
+    private EsSyncWatermarkDao syncWatermarkDao;
+    private EsProductRepository productRepository;
+    private EsBulkIndexer.Session session;
+
+    @BeforeEach
+    void setUp() {
+        productDao = mock(EsProductDao.class);
+        syncWatermarkDao = mock(EsSyncWatermarkDao.class);
+        productRepository = mock(EsProductRepository.class);
+        EsBulkIndexer esBulkIndexer = mock(EsBulkIndexer.class);
+        session = mock(EsBulkIndexer.Session.class);
+        when(esBulkIndexer.open(EsProduct.class)).thenReturn(session);
+        when(session.finish()).thenReturn(new EsBulkIndexer.Result(1, 0, 1, 1, 1));
+        when(productDao.getEsProductListByIds(any())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(EsProductSyncTests::product).collect(Collectors.toList());
+        });
+        esProductService = new EsProductServiceImpl();
+        ReflectionTestUtils.setField(esProductService, "productDao", productDao);
+        ReflectionTestUtils.setField(esProductService, "syncWatermarkDao", syncWatermarkDao);
+        ReflectionTestUtils.setField(esProductService, "productRepository", productRepository);
+        ReflectionTestUtils.setField(esProductService, "esBulkIndexer", esBulkIndexer);
+        ReflectionTestUtils.setField(esProductService, "syncBatchSize", BATCH_SIZE);
+        ReflectionTestUtils.setField(esProductService, "syncLagSeconds", 5);
+        ReflectionTestUtils.setField(esProductService, "syncReconcileWindow", Duration.ofMinutes(10));
+    }
+
+    @Test
+    void syncIndexesSearchableAndDeletesOthers() {
+        Date watermarkTime = new Date(1_000_000L);
+        when(syncWatermarkDao.selectForUpdate(WATERMARK_NAME)).thenReturn(watermark(watermarkTime, 7L));
+        Date updateTime = new Date(2_000_000L);
+        //已上架、已删除、已下架的商品
+        when(productDao.getChangedProductList(watermarkTime, 7L, 5, BATCH_SIZE)).thenReturn(Arrays.asList(
+                change(1L, 0, 1, updateTime), change(2L, 1, 1, updateTime), change(3L, 0, 0, updateTime)));
+
+        assertEquals(3, esProductService.syncChanges());
+        verify(productDao).getEsProductListByIds(Collections.singletonList(1L));
+        verify(session).add(eq("1"), any(EsProduct.class));
+        assertEquals(Arrays.asList(2L, 3L), deletedIds());
+        //水位推进到这一批中的最后一个商品
+        verify(syncWatermarkDao).update(WATERMARK_NAME, updateTime, 3L);
+    }
+
+    @Test
+    void syncKeepsWatermarkWhenIndexFailed() {
+        when(syncWatermarkDao.selectForUpdate(WATERMARK_NAME)).thenReturn(watermark(new Date(1_000_000L), 0L));
+        when(productDao.getChangedProductList(any(), anyLong(), anyInt(), anyInt()))
+                .thenReturn(Collections.singletonList(change(1L, 0, 1, new Date(2_000_000L))));
+        when(session.finish()).thenReturn(new EsBulkIndexer.Result(0, 1, 1, 1, 0));
+
+        assertThrows(IllegalStateException.class, () -> esProductService.syncChanges());
+        verify(syncWatermarkDao, never()).update(anyString(), any(), anyLong());
+    }
+
+    @Test
+    void reconcileRescansWindowBeforeWatermark() {
+        Date watermarkTime = new Date(10_000_000L);
+        when(syncWatermarkDao.selectForUpdate(WATERMARK_NAME)).thenReturn(watermark(watermarkTime, 9L));
+        Date windowStart = new Date(watermarkTime.getTime() - Duration.ofMinutes(10).toMillis());
+        //提交晚于同步延迟的商品，修改时间早于水位
+        Date lateTime = new Date(watermarkTime.getTime() - 60_000L);
+        when(productDao.getReconcileProductList(windowStart, 0L, watermarkTime, 9L, BATCH_SIZE)).thenReturn(Arrays.asList(
+                change(4L, 0, 1, lateTime), change(5L, 1, 0, lateTime)));
+        when(productDao.getReconcileProductList(lateTime, 5L, watermarkTime, 9L, BATCH_SIZE)).thenReturn(
+                Collections.singletonList(change(6L, 0, 1, watermarkTime)));
+
+        assertEquals(3, esProductService.reconcileChanges());
+        verify(session).add(eq("4"), any(EsProduct.class));
+        verify(session).add(eq("6"), any(EsProduct.class));
+        assertEquals(Collections.singletonList(5L), deletedIds());
+        //补偿不改变水位
+        verify(syncWatermarkDao, never()).update(anyString(), any(), anyLong());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> deletedIds() {
+        ArgumentCaptor<Iterable<EsProduct>> captor = ArgumentCaptor.forClass(Iterable.class);
+        verify(productRepository).deleteAll(captor.capture());
+        return StreamSupport.stream(captor.getValue().spliterator(), false)
+                .map(EsProduct::getId).collect(Collectors.toList());
+    }
+
+    private static EsSyncWatermark watermark(Date lastUpdateTime, Long lastId) {
+        EsSyncWatermark watermark = new EsSyncWatermark();
+        watermark.setName(WATERMARK_NAME);
+        watermark.setLastUpdateTime(lastUpdateTime);
+        watermark.setLastId(lastId);
+        return watermark;
+    }
+
+    private static EsProductChange change(Long id, Integer deleteStatus, Integer publishStatus, Date updateTime) {
+        EsProductChange change = new EsProductChange();
+        change.setId(id);
+        change.setDeleteStatus(deleteStatus);
+        change.setPublishStatus(publishStatus);
+        change.setUpdateTime(updateTime);
+        return change;
+    }
+
+    private static EsProduct product(Long id) {
+        EsProduct product = new EsProduct();
+        product.setId(id);
+        return product;
+    }
+}
@@ -0,0 +1,25 @@
+-- 品牌变更的发件箱表，由pms_brand上的触发器在修改品牌的同一个事务中写入，由BrandOutboxRelay批量读取后清理缓存
+CREATE TABLE `pms_brand_outbox` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `brand_id` bigint(20) NOT NULL COMMENT '变更的品牌ID',
+  `operation` varchar(16) NOT NULL COMMENT '变更类型：create、update、delete',
+  `create_time` datetime(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) COMMENT '变更时间',
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='品牌变更发件箱';
+
+-- 触发器是发件箱唯一的写入方，PmsBrandService、批量SQL和管理工具的修改都只产生一条记录，
+-- 部署时必须同时创建，否则缓存只能依靠Service中的即时清理和过期时间
+DELIMITER $$
+CREATE TRIGGER `pms_brand_outbox_insert` AFTER INSERT ON `pms_brand` FOR EACH ROW
+BEGIN
+  INSERT INTO `pms_brand_outbox` (`brand_id`, `operation`) VALUES (NEW.`id`, 'create');
+END$$
+CREATE TRIGGER `pms_brand_outbox_update` AFTER UPDATE ON `pms_brand` FOR EACH ROW
+BEGIN
+  INSERT INTO `pms_brand_outbox` (`brand_id`, `operation`) VALUES (NEW.`id`, 'update');
+END$$
+CREATE TRIGGER `pms_brand_outbox_delete` AFTER DELETE ON `pms_brand` FOR EACH ROW
+BEGIN
+  INSERT INTO `pms_brand_outbox` (`brand_id`, `operation`) VALUES (OLD.`id`, 'delete');
+END$$
+DELIMITER ;
@@ -5,7 +5,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 @SpringBootApplication
-@MapperScan("com/lzy/mall/tiny/mbg/mapper")
+@MapperScan({"com/lzy/mall/tiny/mbg/mapper", "com/lzy/mall/tiny/dao"})
 public class MallTinyRedisApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,47 @@
+package com.lzy.mall.tiny.common.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 接口限流注解，按客户端在Redis中执行令牌桶限流：
+ * 每个客户端最多积累limit个令牌，每period秒补充limit个令牌，每次请求消耗一个令牌
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimit {
+    /**
+     * 限流名称，相同名称的接口共用一个令牌桶，为空时使用方法名
+     */
+    String name() default "";
+
+    /**
+     * 令牌桶容量，即period时间内允许的请求数
+     */
+    int limit() default 100;
+
+    /**
+     * 补充limit个令牌所需的时间（秒）
+     */
+    int period() default 1;
+
+    /**
+     * 限流对象
+     */
+    KeyType keyType() default KeyType.IP;
+
+    enum KeyType {
+        /**
+         * 按客户端IP限流
+         */
+        IP,
+        /**
+         * 按登录用户限流，未登录时按IP限流
+         */
+        USER
+    }
+}
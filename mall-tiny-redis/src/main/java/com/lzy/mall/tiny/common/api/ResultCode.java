@@ -5,7 +5,8 @@ public enum ResultCode implements IErrorCode {
     FAILED(500, "操作失败"),
     VALIDATE_FAILED(404, "参数检验失败"),
     UNAUTHORIZED(401, "暂未登录或token已经过期"),
-    FORBIDDEN(403, "没有相关权限");
+    FORBIDDEN(403, "没有相关权限"),
+    TOO_MANY_REQUESTS(429, "请求过于频繁，请稍后再试");
     private long code;
     private String message;
 
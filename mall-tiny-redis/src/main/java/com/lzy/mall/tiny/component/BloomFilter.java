@@ -0,0 +1,36 @@
+package com.lzy.mall.tiny.component;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 布隆过滤器：判断不存在时一定不存在，判断存在时有一定误判率；元素只能添加不能删除
+ * 只有通过initialize添加了全部元素后判断结果才生效，未初始化时一律视为可能存在，避免只包含部分元素时误拦截
+ * 多节点部署时使用{@link RedisBloomFilter}共享数据，offheap profile下使用进程内的{@link LocalBloomFilter}
+ */
+public interface BloomFilter {
+
+    boolean mightContain(Object value);
+
+    /**
+     * 批量判断多个元素，结果顺序与values一致
+     */
+    List<Boolean> mightContainAll(List<?> values);
+
+    /**
+     * 增量添加元素，过滤器未初始化时添加的元素同样会被记录，但在初始化完成前判断结果一律为可能存在
+     */
+    void add(Object value);
+
+    void addAll(Collection<?> values);
+
+    /**
+     * 添加全部已存在的元素，完成后才标记为已初始化，此后判断结果才会生效
+     */
+    void initialize(Collection<?> values);
+
+    /**
+     * 是否已完成初始化，过滤器数据丢失（如Redis重启或淘汰）后返回false，需要重新初始化
+     */
+    boolean isInitialized();
+}
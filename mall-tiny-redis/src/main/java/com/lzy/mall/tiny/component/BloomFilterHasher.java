@@ -0,0 +1,43 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+/**
+ * 布隆过滤器的位数组大小、哈希函数个数和元素对应的位置计算，Redis和进程内的实现使用相同的算法
+ */
+final class BloomFilterHasher {
+    private final long bitSize;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                期望的误判率
+     */
+    BloomFilterHasher(long expectedInsertions, double fpp) {
+        //m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        this.bitSize = Math.max(64, (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    long getBitSize() {
+        return bitSize;
+    }
+
+    int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * 使用两个哈希值组合出k个位置（Kirsch-Mitzenmacher）
+     */
+    long[] offsets(Object value) {
+        long[] hash = MurmurHash.hash128(String.valueOf(value));
+        long[] offsets = new long[hashCount];
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % bitSize;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,174 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.core.collection.CollUtil;
+import com.github.pagehelper.PageHelper;
+import com.lzy.mall.tiny.config.RedisConfig;
+import com.lzy.mall.tiny.mbg.mapper.PmsBrandMapper;
+import com.lzy.mall.tiny.mbg.model.PmsBrand;
+import com.lzy.mall.tiny.mbg.model.PmsBrandExample;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 应用启动时初始化品牌缓存相关数据
+ * ApplicationRunner执行完之前应用的就绪状态不会变为ACCEPTING_TRAFFIC，预热完成或超时后才开始接收流量
+ * 之后定时检查布隆过滤器，初始化失败或数据丢失（Redis重启、key被淘汰）时重新初始化
+ */
+@Component
+public class BrandCacheInitializer implements ApplicationRunner, DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrandCacheInitializer.class);
+    @Autowired
+    private PmsBrandMapper brandMapper;
+    @Autowired
+    private BloomFilter brandBloomFilter;
+    @Autowired
+    private RedisCacheBatchSupport redisCacheBatchSupport;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${redis.bloom.brand.check-interval:30s}")
+    private Duration bloomCheckInterval;
+    @Value("${redis.warm-up.enabled:true}")
+    private Boolean warmUpEnabled;
+    @Value("${redis.warm-up.brand-ids:}")
+    private List<Long> warmUpBrandIds;
+    @Value("${redis.warm-up.top:100}")
+    private Integer warmUpTop;
+    @Value("${redis.warm-up.batch-size:50}")
+    private Integer warmUpBatchSize;
+    @Value("${redis.warm-up.parallelism:4}")
+    private Integer warmUpParallelism;
+    @Value("${redis.warm-up.timeout:30s}")
+    private Duration warmUpTimeout;
+    //最近一次预热的品牌数量
+    private final AtomicInteger warmUpCount = new AtomicInteger();
+    private ScheduledExecutorService bloomCheckExecutor;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        initBloomFilter();
+        bloomCheckExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "brand-bloom-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        bloomCheckExecutor.scheduleWithFixedDelay(this::checkBloomFilter, bloomCheckInterval.toMillis(),
+                bloomCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+        if (warmUpEnabled) {
+            warmUp();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (bloomCheckExecutor != null) {
+            bloomCheckExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 把所有已存在的品牌ID加入布隆过滤器后标记为已初始化，只添加不清空，多个节点重复执行也没有影响
+     */
+    private void initBloomFilter() {
+        try {
+            List<Long> ids = brandMapper.selectByExample(new PmsBrandExample()).stream()
+                    .map(PmsBrand::getId).collect(Collectors.toList());
+            brandBloomFilter.initialize(ids);
+            LOGGER.info("init brand bloom filter success, count:{}", ids.size());
+        } catch (Exception e) {
+            //初始化失败时没有初始化标记，查询不会被拦截，由定时检查重试
+            LOGGER.warn("init brand bloom filter failed", e);
+        }
+    }
+
+    private void checkBloomFilter() {
+        try {
+            if (!brandBloomFilter.isInitialized()) {
+                LOGGER.warn("brand bloom filter is not initialized, rebuilding");
+                initBloomFilter();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("check brand bloom filter failed", e);
+        }
+    }
+
+    /**
+     * 预热热点品牌缓存：按批次并行从数据库加载，每批通过管道一次写入Redis
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        AtomicInteger count = new AtomicInteger();
+        meterRegistry.gauge("cache.warmup.count", warmUpCount);
+        ExecutorService executor = Executors.newFixedThreadPool(warmUpParallelism);
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            for (List<Long> batch : CollUtil.split(getWarmUpBrandIds(), warmUpBatchSize)) {
+                tasks.add(() -> count.addAndGet(warmUpBatch(batch)));
+            }
+            //超时后未完成的批次会被取消，不再阻塞应用就绪
+            List<Future<Integer>> futures = executor.invokeAll(tasks, warmUpTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            long cancelled = futures.stream().filter(Future::isCancelled).count();
+            if (cancelled > 0) {
+                LOGGER.warn("warm up brand cache timeout, cancelled batch:{}", cancelled);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.warn("warm up brand cache failed", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        long duration = System.currentTimeMillis() - start;
+        warmUpCount.set(count.get());
+        meterRegistry.timer("cache.warmup.duration").record(duration, TimeUnit.MILLISECONDS);
+        LOGGER.info("warm up brand cache finished, count:{}, duration:{}ms", count.get(), duration);
+    }
+
+    /**
+     * 优先使用配置的品牌ID，未配置时取商品数量最多的品牌
+     */
+    private List<Long> getWarmUpBrandIds() {
+        if (CollUtil.isNotEmpty(warmUpBrandIds)) {
+            return warmUpBrandIds;
+        }
+        PmsBrandExample example = new PmsBrandExample();
+        example.setOrderByClause("product_count desc");
+        PageHelper.startPage(1, warmUpTop, false);
+        return brandMapper.selectByExample(example).stream().map(PmsBrand::getId).collect(Collectors.toList());
+    }
+
+    private int warmUpBatch(List<Long> ids) {
+        PmsBrandExample example = new PmsBrandExample();
+        example.createCriteria().andIdIn(ids);
+        //与getItem一致，缓存包含品牌故事的完整数据
+        List<PmsBrand> brandList = brandMapper.selectByExampleWithBLOBs(example);
+        if (brandList.isEmpty()) {
+            return 0;
+        }
+        //与@Cacheable中的key保持一致
+        Map<String, PmsBrand> entries = new LinkedHashMap<>();
+        brandList.forEach(brand -> entries.put("pms:brand:" + brand.getId(), brand));
+        //已有的缓存可能比本次读取的数据更新，只写入不存在的key
+        return redisCacheBatchSupport.multiPutIfAbsent(RedisConfig.REDIS_KEY_DATABASE, entries).size();
+    }
+}
@@ -0,0 +1,266 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.core.util.IdUtil;
+import com.lzy.mall.tiny.config.RedisConfig;
+import com.lzy.mall.tiny.dao.PmsBrandOutboxDao;
+import com.lzy.mall.tiny.domain.PmsBrandOutbox;
+import com.lzy.mall.tiny.service.RedisService;
+import com.lzy.mall.tiny.service.impl.PmsBrandServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 品牌变更发件箱的转发任务：定时批量读取发件箱，合并同一品牌的多次变更，
+ * 在一次管道请求中UNLINK相关缓存、递增列表版本号并广播进程内缓存失效通知，处理成功后删除发件箱记录
+ * 发件箱只由pms_brand上的数据库触发器写入，经过PmsBrandService的修改和批量SQL、管理工具的修改都会被清理
+ * 多个节点通过Redis租约保证同一时间只有一个节点在转发，每处理一批续约一次，续约失败时停止，处理失败的记录保留到下次重试
+ * offheap profile下没有Redis服务，单节点直接清理进程内的缓存，不需要租约
+ */
+@Component
+@ConditionalOnProperty(prefix = "redis.outbox", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class BrandOutboxRelay implements InitializingBean, DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BrandOutboxRelay.class);
+    private static final String LEASE_KEY = RedisConfig.REDIS_KEY_DATABASE + ":outbox:pms:brand:lease";
+    //失效通知的发送方，与任何节点都不同，所有节点都会处理
+    private static final String SENDER = "outbox";
+    private static final String OPERATION_CREATE = "create";
+    private static final String OPERATION_DELETE = "delete";
+    /**
+     * 只删除自己持有的租约
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end", Long.class);
+    /**
+     * 只续约自己持有的租约，ARGV[2]为租约时间（毫秒）
+     */
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+
+    @Autowired
+    private PmsBrandOutboxDao brandOutboxDao;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired(required = false)
+    private RedisCacheManager redisCacheManager;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private RedisService redisService;
+    @Autowired
+    private BloomFilter brandBloomFilter;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private RedisSerializer<Object> redisSerializer;
+    @Value("${redis.outbox.poll-interval:500ms}")
+    private Duration pollInterval;
+    @Value("${redis.outbox.batch-size:500}")
+    private Integer batchSize;
+    @Value("${redis.outbox.lease-time:10s}")
+    private Duration leaseTime;
+    @Value("${redis.cache.null-ttl:60}")
+    private Long nullTtl;
+
+    private final String nodeId = IdUtil.fastSimpleUUID();
+    //最早一条未处理变更的等待时间，每个节点都从发件箱表读取，不依赖是否持有租约
+    private final AtomicLong lagMillis = new AtomicLong();
+    private ScheduledExecutorService executor;
+    private Counter relayedCounter;
+    private Counter invalidatedCounter;
+
+    @Override
+    public void afterPropertiesSet() {
+        Gauge.builder("cache.outbox.lag", lagMillis, AtomicLong::get)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        relayedCounter = Counter.builder("cache.outbox.relayed").register(meterRegistry);
+        invalidatedCounter = Counter.builder("cache.outbox.invalidated").register(meterRegistry);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "brand-outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::poll, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void poll() {
+        try {
+            if (isLocal()) {
+                relayAll();
+            } else if (Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(LEASE_KEY, nodeId, leaseTime))) {
+                try {
+                    relayAll();
+                } finally {
+                    stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(LEASE_KEY), nodeId);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("relay brand outbox failed", e);
+        }
+        updateLag();
+    }
+
+    /**
+     * 一批处理满时续约后继续读取，直到发件箱清空；租约已过期或被其他节点持有时停止，避免两个节点同时转发
+     * 单批的处理时间需要小于租约时间
+     */
+    private void relayAll() {
+        int count;
+        do {
+            count = relayBatch();
+        } while (count >= batchSize && renewLease());
+    }
+
+    private boolean renewLease() {
+        if (isLocal()) {
+            return true;
+        }
+        Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(LEASE_KEY),
+                nodeId, String.valueOf(leaseTime.toMillis()));
+        return renewed != null && renewed == 1;
+    }
+
+    private void updateLag() {
+        try {
+            Date oldest = brandOutboxDao.selectOldestCreateTime();
+            lagMillis.set(oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.getTime()));
+        } catch (Exception e) {
+            LOGGER.warn("read brand outbox lag failed", e);
+        }
+    }
+
+    /**
+     * 处理一批变更，返回读取到的记录数
+     */
+    private int relayBatch() {
+        List<PmsBrandOutbox> batch = brandOutboxDao.selectBatch(batchSize);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        //同一品牌的多次变更按写入顺序合并，最后一次为删除时需要写入空值缓存，否则删除空值缓存
+        Map<Long, Boolean> brandIds = new LinkedHashMap<>();
+        batch.forEach(outbox -> brandIds.put(outbox.getBrandId(), OPERATION_DELETE.equals(outbox.getOperation())));
+        //新增的品牌需要加入布隆过滤器，否则查询会被拦截
+        List<Long> createdIds = batch.stream().filter(outbox -> OPERATION_CREATE.equals(outbox.getOperation()))
+                .map(PmsBrandOutbox::getBrandId).distinct().collect(Collectors.toList());
+        if (!createdIds.isEmpty()) {
+            brandBloomFilter.addAll(createdIds);
+        }
+        invalidate(brandIds);
+        brandOutboxDao.deleteByIds(batch.stream().map(PmsBrandOutbox::getId).collect(Collectors.toList()));
+        relayedCounter.increment(batch.size());
+        invalidatedCounter.increment(brandIds.size());
+        return batch.size();
+    }
+
+    /**
+     * 一次管道请求完成所有清理：UNLINK详情缓存、Hash缓存和仍存在品牌的空值缓存，为已删除的品牌写入空值缓存，
+     * 递增列表版本号，广播进程内缓存失效
+     * brandIds为品牌ID -> 是否已删除
+     */
+    private void invalidate(Map<Long, Boolean> brandIds) {
+        if (isLocal()) {
+            invalidateLocal(brandIds);
+            return;
+        }
+        RedisCache cache = (RedisCache) redisCacheManager.getCache(RedisConfig.REDIS_KEY_DATABASE);
+        String cachePrefix = cache.getCacheConfiguration().getKeyPrefixFor(cache.getName());
+        List<byte[]> keys = new ArrayList<>(brandIds.size() * 3);
+        Map<byte[], byte[]> nullEntries = new LinkedHashMap<>();
+        List<byte[]> messages = new ArrayList<>(brandIds.size());
+        brandIds.forEach((id, deleted) -> {
+            String cacheKey = PmsBrandServiceImpl.BRAND_CACHE_KEY_PREFIX + id;
+            keys.add(toBytes(cachePrefix + cacheKey));
+            keys.add(toBytes(PmsBrandServiceImpl.HASH_KEY_PREFIX + id));
+            if (deleted) {
+                //布隆过滤器无法删除元素，用空值缓存拦截已删除的ID
+                nullEntries.put(toBytes(PmsBrandServiceImpl.NULL_KEY_PREFIX + id), redisSerializer.serialize(id));
+            } else {
+                keys.add(toBytes(PmsBrandServiceImpl.NULL_KEY_PREFIX + id));
+            }
+            messages.add(toBytes(NearCacheManager.evictMessage(SENDER, RedisConfig.REDIS_KEY_DATABASE, cacheKey)));
+        });
+        byte[] channel = toBytes(NearCacheManager.INVALIDATION_CHANNEL);
+        Expiration nullExpiration = Expiration.seconds(nullTtl);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.keyCommands().unlink(keys.toArray(new byte[0][]));
+            nullEntries.forEach((key, value) -> connection.stringCommands().set(key, value, nullExpiration, SetOption.upsert()));
+            connection.stringCommands().incr(toBytes(PmsBrandServiceImpl.LIST_VERSION_KEY));
+            messages.forEach(message -> connection.publish(channel, message));
+            return null;
+        });
+    }
+
+    /**
+     * offheap profile下通过进程内的缓存管理器和RedisService完成同样的清理
+     */
+    private void invalidateLocal(Map<Long, Boolean> brandIds) {
+        Cache cache = cacheManager.getCache(RedisConfig.REDIS_KEY_DATABASE);
+        List<String> keys = new ArrayList<>(brandIds.size() * 2);
+        Map<String, Object> nullEntries = new LinkedHashMap<>();
+        brandIds.forEach((id, deleted) -> {
+            cache.evict(PmsBrandServiceImpl.BRAND_CACHE_KEY_PREFIX + id);
+            keys.add(PmsBrandServiceImpl.HASH_KEY_PREFIX + id);
+            if (deleted) {
+                nullEntries.put(PmsBrandServiceImpl.NULL_KEY_PREFIX + id, id);
+            } else {
+                keys.add(PmsBrandServiceImpl.NULL_KEY_PREFIX + id);
+            }
+        });
+        redisService.del(keys);
+        if (!nullEntries.isEmpty()) {
+            redisService.mSet(nullEntries, nullTtl);
+        }
+        redisService.incr(PmsBrandServiceImpl.LIST_VERSION_KEY, 1);
+    }
+
+    /**
+     * offheap profile下没有Redis缓存管理器
+     */
+    private boolean isLocal() {
+        return redisCacheManager == null;
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
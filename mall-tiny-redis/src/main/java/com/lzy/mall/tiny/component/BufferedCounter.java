@@ -0,0 +1,212 @@
+package com.lzy.mall.tiny.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 异步批量计数器：计数先累加到本地的LongAdder中，定时或key数量达到阈值时通过管道批量写入Redis
+ * 适用于浏览量、评论数等允许短暂延迟的计数，写入Redis前读取到的值不包含本地尚未提交的增量
+ */
+@Component
+@Profile("!offheap")
+public class BufferedCounter implements InitializingBean, DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferedCounter.class);
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${redis.counter.flush-interval:1s}")
+    private Duration flushInterval;
+    @Value("${redis.counter.max-keys:10000}")
+    private Integer maxKeys;
+
+    private final ConcurrentMap<CounterKey, LongAdder> buffer = new ConcurrentHashMap<>();
+    //上次提交时增量为0的key，连续两次为0时从本地删除
+    private final ConcurrentMap<CounterKey, Boolean> idleKeys = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private ScheduledExecutorService executor;
+    private Counter bufferedCounter;
+    private Counter flushedCounter;
+
+    @Override
+    public void afterPropertiesSet() {
+        bufferedCounter = Counter.builder("redis.counter.buffered").register(meterRegistry);
+        flushedCounter = Counter.builder("redis.counter.flushed").register(meterRegistry);
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 应用关闭时把剩余的增量全部写入Redis
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(flushInterval.toMillis() * 2, TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    public void incr(String key, long delta) {
+        add(new CounterKey(key, null), delta);
+    }
+
+    public void hIncr(String key, String hashKey, long delta) {
+        add(new CounterKey(key, hashKey), delta);
+    }
+
+    private void add(CounterKey counterKey, long delta) {
+        accumulate(counterKey, delta);
+        bufferedCounter.increment();
+        //key数量达到阈值时提前提交，同一时间只安排一次
+        if (buffer.size() >= maxKeys && !executor.isShutdown() && flushRequested.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 把增量累加到本地，累加完成后adder已被空闲清理删除时，取回留在旧adder上的增量重新累加，保证增量不丢失
+     * 清理线程删除后也会取回旧adder上的增量，双方都用sumThenReset取值，每一份增量只会被取回一次
+     */
+    private void accumulate(CounterKey counterKey, long delta) {
+        while (delta != 0) {
+            LongAdder adder = buffer.computeIfAbsent(counterKey, k -> new LongAdder());
+            adder.add(delta);
+            if (buffer.get(counterKey) == adder) {
+                return;
+            }
+            delta = adder.sumThenReset();
+        }
+    }
+
+    /**
+     * 提交本地累加的增量，一次管道请求写入所有key
+     */
+    public void flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Map.Entry<CounterKey, Long>> deltas = new ArrayList<>();
+            for (Map.Entry<CounterKey, LongAdder> entry : buffer.entrySet()) {
+                LongAdder adder = entry.getValue();
+                long delta = adder.sum();
+                if (delta != 0) {
+                    //减去已提交的部分而不是清零，提交期间新增的计数会保留到下一次
+                    adder.add(-delta);
+                    deltas.add(Map.entry(entry.getKey(), delta));
+                    idleKeys.remove(entry.getKey());
+                } else if (idleKeys.putIfAbsent(entry.getKey(), Boolean.TRUE) != null) {
+                    removeIdle(entry.getKey(), adder);
+                }
+            }
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                redisTemplate.executePipelined(new SessionCallback<Object>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Object execute(RedisOperations operations) throws DataAccessException {
+                        for (Map.Entry<CounterKey, Long> entry : deltas) {
+                            CounterKey counterKey = entry.getKey();
+                            if (counterKey.hashKey == null) {
+                                operations.opsForValue().increment(counterKey.key, entry.getValue());
+                            } else {
+                                operations.opsForHash().increment(counterKey.key, counterKey.hashKey, entry.getValue());
+                            }
+                        }
+                        return null;
+                    }
+                });
+                flushedCounter.increment(deltas.size());
+            } catch (RedisPipelineException e) {
+                //管道中部分命令失败时，只放回没有成功返回结果的增量，已写入的key不会被重复累加
+                List<Object> results = e.getPipelineResult();
+                int failed = 0;
+                for (int i = 0; i < deltas.size(); i++) {
+                    if (i >= results.size() || results.get(i) instanceof Throwable) {
+                        accumulate(deltas.get(i).getKey(), deltas.get(i).getValue());
+                        failed++;
+                    }
+                }
+                flushedCounter.increment(deltas.size() - failed);
+                LOGGER.warn("flush redis counter failed, count:{}, failed:{}", deltas.size(), failed, e);
+            } catch (Exception e) {
+                //没有拿到任何结果时把增量全部放回本地，下次继续提交
+                LOGGER.warn("flush redis counter failed, count:{}", deltas.size(), e);
+                deltas.forEach(entry -> accumulate(entry.getKey(), entry.getValue()));
+            }
+        } finally {
+            flushing.set(false);
+        }
+    }
+
+    private void removeIdle(CounterKey counterKey, LongAdder adder) {
+        idleKeys.remove(counterKey);
+        if (buffer.remove(counterKey, adder)) {
+            //删除前后有新的计数时放回本地
+            accumulate(counterKey, adder.sumThenReset());
+        }
+    }
+
+    private static final class CounterKey {
+        private final String key;
+        private final String hashKey;
+
+        private CounterKey(String key, String hashKey) {
+            this.key = key;
+            this.hashKey = hashKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CounterKey that)) {
+                return false;
+            }
+            return key.equals(that.key) && Objects.equals(hashKey, that.hashKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(key, hashKey);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.lzy.mall.tiny.component;
+
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+/**
+ * 统计序列化字节数的序列化器，写入和读取的字节数累加到当前线程的计数中，
+ * 同步调用的序列化和反序列化都在调用线程中执行，调用前后的计数差即为本次操作传输的值大小
+ */
+public class ByteCountingRedisSerializer implements RedisSerializer<Object> {
+    private static final ThreadLocal<long[]> BYTES = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final RedisSerializer<Object> delegate;
+
+    public ByteCountingRedisSerializer(RedisSerializer<Object> delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * 当前线程累计序列化和反序列化的字节数
+     */
+    public static long currentBytes() {
+        return BYTES.get()[0];
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes != null) {
+            BYTES.get()[0] += bytes.length;
+        }
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes != null) {
+            BYTES.get()[0] += bytes.length;
+        }
+        return delegate.deserialize(bytes);
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return delegate.getTargetType();
+    }
+}
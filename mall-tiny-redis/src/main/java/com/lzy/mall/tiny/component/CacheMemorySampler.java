@@ -0,0 +1,164 @@
+package com.lzy.mall.tiny.component;
+
+import com.lzy.mall.tiny.config.RedisCacheProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 定时估算每个Redis缓存占用的内存：SCAN统计缓存的key数量，同时随机抽取部分key执行MEMORY USAGE，
+ * 以平均值乘以key数量作为估算值，通过cache.redis.memory和cache.redis.keys指标输出，超出预算时输出告警
+ */
+@Component
+@Profile("!offheap")
+@ConditionalOnProperty(prefix = "redis.cache.sampler", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class CacheMemorySampler implements InitializingBean, DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheMemorySampler.class);
+    private static final int SCAN_COUNT = 1000;
+    private static final byte[] USAGE = "USAGE".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private RedisCacheManager redisCacheManager;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisCacheProperties cacheProperties;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentMap<String, AtomicLong> memoryGauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> keyGauges = new ConcurrentHashMap<>();
+    private ScheduledExecutorService executor;
+
+    @Override
+    public void afterPropertiesSet() {
+        long interval = cacheProperties.getSampler().getInterval().toMillis();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-cache-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::sampleAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    public void sampleAll() {
+        for (String cacheName : redisCacheManager.getCacheNames()) {
+            try {
+                sample(cacheName);
+            } catch (Exception e) {
+                LOGGER.warn("sample redis cache memory failed, cache:{}", cacheName, e);
+            }
+        }
+    }
+
+    private void sample(String cacheName) {
+        RedisCache cache = (RedisCache) redisCacheManager.getCache(cacheName);
+        if (cache == null) {
+            return;
+        }
+        String keyPrefix = cache.getCacheConfiguration().getKeyPrefixFor(cacheName);
+        int sampleSize = cacheProperties.getSampler().getSampleSize();
+        //蓄水池抽样，保证每个key被抽中的概率相同
+        List<String> samples = new ArrayList<>(sampleSize);
+        long keyCount = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(escape(keyPrefix) + "*").count(SCAN_COUNT).build();
+        try (Cursor<String> cursor = stringRedisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                String key = cursor.next();
+                keyCount++;
+                if (samples.size() < sampleSize) {
+                    samples.add(key);
+                } else {
+                    long index = ThreadLocalRandom.current().nextLong(keyCount);
+                    if (index < sampleSize) {
+                        samples.set((int) index, key);
+                    }
+                }
+            }
+        }
+        long memory = keyCount == 0 ? 0 : averageMemory(samples) * keyCount;
+        gauge(memoryGauges, "cache.redis.memory", cacheName).set(memory);
+        gauge(keyGauges, "cache.redis.keys", cacheName).set(keyCount);
+        RedisCacheProperties.CacheSpec spec = cacheProperties.getSpecs().getOrDefault(cacheName, cacheProperties.getDefaults());
+        DataSize budget = spec.getBudget();
+        if (budget != null && memory > budget.toBytes()) {
+            LOGGER.warn("redis cache over budget, cache:{}, keys:{}, memory:{}B, budget:{}B",
+                    cacheName, keyCount, memory, budget.toBytes());
+        } else {
+            LOGGER.debug("redis cache sampled, cache:{}, keys:{}, memory:{}B", cacheName, keyCount, memory);
+        }
+    }
+
+    /**
+     * 通过管道一次执行所有抽样key的MEMORY USAGE，抽样期间已过期的key不参与计算
+     */
+    private long averageMemory(List<String> samples) {
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : samples) {
+                connection.execute("MEMORY", USAGE, key.getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        });
+        long total = 0;
+        int count = 0;
+        for (Object result : results) {
+            if (result instanceof Number number) {
+                total += number.longValue();
+                count++;
+            }
+        }
+        return count == 0 ? 0 : total / count;
+    }
+
+    private AtomicLong gauge(ConcurrentMap<String, AtomicLong> gauges, String name, String cacheName) {
+        return gauges.computeIfAbsent(cacheName, key -> {
+            AtomicLong value = new AtomicLong();
+            Gauge.builder(name, value, AtomicLong::get).tag("cache", cacheName).register(meterRegistry);
+            return value;
+        });
+    }
+
+    /**
+     * 转义key前缀中的通配符，避免匹配到其他缓存的key
+     */
+    private static String escape(String prefix) {
+        StringBuilder builder = new StringBuilder(prefix.length());
+        for (char c : prefix.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
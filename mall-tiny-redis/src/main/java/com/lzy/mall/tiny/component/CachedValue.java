@@ -0,0 +1,60 @@
+package com.lzy.mall.tiny.component;
+
+import java.io.Serializable;
+
+/**
+ * 写入Redis缓存的值，同时保存过期时间和加载耗时，{@link SingleFlightCache}判断是否提前刷新时不需要再查询PTTL
+ */
+public class CachedValue implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Object value;
+    /**
+     * 过期时间戳（毫秒），0表示未知，不提前刷新
+     */
+    private long expireAt;
+    /**
+     * 加载耗时（毫秒），0表示未知
+     */
+    private long delta;
+
+    public CachedValue() {
+    }
+
+    public CachedValue(Object value, long expireAt, long delta) {
+        this.value = value;
+        this.expireAt = expireAt;
+        this.delta = delta;
+    }
+
+    /**
+     * 取出缓存的实际值，兼容未包装的旧数据
+     */
+    public static Object unwrap(Object cached) {
+        return cached instanceof CachedValue ? ((CachedValue) cached).getValue() : cached;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    public long getExpireAt() {
+        return expireAt;
+    }
+
+    public void setExpireAt(long expireAt) {
+        this.expireAt = expireAt;
+    }
+
+    public long getDelta() {
+        return delta;
+    }
+
+    public void setDelta(long delta) {
+        this.delta = delta;
+    }
+}
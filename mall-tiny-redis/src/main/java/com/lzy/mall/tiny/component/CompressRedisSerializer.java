@@ -0,0 +1,102 @@
+package com.lzy.mall.tiny.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 压缩序列化器，超过阈值的值使用LZ4压缩后再写入Redis
+ * 压缩后的数据以魔数开头，小于阈值的值原样写入，因此也能读取开启压缩前写入的数据
+ */
+public class CompressRedisSerializer implements RedisSerializer<Object> {
+    /**
+     * 压缩数据的魔数，0xC0不会出现在JSON文本开头，也不会是Kryo注册类型编号的首字节
+     */
+    private static final byte[] MAGIC = {(byte) 0xC0, 'L', 'Z', '4'};
+    //魔数 + 原始长度
+    private static final int HEADER_LENGTH = MAGIC.length + Integer.BYTES;
+
+    private final RedisSerializer<Object> delegate;
+    private final int threshold;
+    private final LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+    private final Counter rawBytes;
+    private final Counter compressedBytes;
+    private final Counter compressedCount;
+    private final Counter skippedCount;
+
+    public CompressRedisSerializer(RedisSerializer<Object> delegate, int threshold, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.rawBytes = Counter.builder("cache.compression.bytes").tag("type", "raw").register(meterRegistry);
+        this.compressedBytes = Counter.builder("cache.compression.bytes").tag("type", "compressed").register(meterRegistry);
+        this.compressedCount = Counter.builder("cache.compression.values").tag("result", "compressed").register(meterRegistry);
+        this.skippedCount = Counter.builder("cache.compression.values").tag("result", "skipped").register(meterRegistry);
+        Gauge.builder("cache.compression.ratio", this, serializer -> serializer.ratio()).register(meterRegistry);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        byte[] bytes = delegate.serialize(value);
+        if (bytes == null || bytes.length < threshold) {
+            skippedCount.increment();
+            return bytes;
+        }
+        byte[] compressed = new byte[HEADER_LENGTH + compressor.maxCompressedLength(bytes.length)];
+        int length = compressor.compress(bytes, 0, bytes.length, compressed, HEADER_LENGTH);
+        //压缩效果不明显时直接保存原始数据，省去读取时的解压开销
+        if (HEADER_LENGTH + length >= bytes.length) {
+            skippedCount.increment();
+            return bytes;
+        }
+        ByteBuffer.wrap(compressed).put(MAGIC).putInt(bytes.length);
+        compressedCount.increment();
+        rawBytes.increment(bytes.length);
+        compressedBytes.increment(HEADER_LENGTH + length);
+        byte[] result = new byte[HEADER_LENGTH + length];
+        System.arraycopy(compressed, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (!isCompressed(bytes)) {
+            return delegate.deserialize(bytes);
+        }
+        int originalLength = ByteBuffer.wrap(bytes, MAGIC.length, Integer.BYTES).getInt();
+        byte[] original = new byte[originalLength];
+        try {
+            decompressor.decompress(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, original, 0);
+        } catch (Exception e) {
+            throw new SerializationException("Could not decompress LZ4: " + e.getMessage(), e);
+        }
+        return delegate.deserialize(original);
+    }
+
+    private static boolean isCompressed(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 压缩后字节数与原始字节数之比，越小说明压缩效果越好
+     */
+    private double ratio() {
+        double raw = rawBytes.count();
+        return raw == 0 ? 1 : compressedBytes.count() / raw;
+    }
+}
@@ -0,0 +1,53 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch频率估计，用固定大小的计数矩阵统计任意多个key的访问次数
+ * 估计值只会偏大不会偏小，误差与宽度成反比
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray counters;
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        this.counters = new AtomicLongArray(depth * width);
+    }
+
+    /**
+     * 增加计数并返回增加后的估计值
+     */
+    public long add(String key, long count) {
+        long[] hash = MurmurHash.hash128(key);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.addAndGet(index(hash, i), count));
+        }
+        return min;
+    }
+
+    public long estimate(String key) {
+        long[] hash = MurmurHash.hash128(key);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, counters.get(index(hash, i)));
+        }
+        return min;
+    }
+
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    private int index(long[] hash, int row) {
+        long combined = hash[0] + row * hash[1];
+        return row * width + (int) ((combined & Long.MAX_VALUE) % width);
+    }
+}
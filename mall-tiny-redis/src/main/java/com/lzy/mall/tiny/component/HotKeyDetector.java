@@ -0,0 +1,174 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * 热点key探测：按采样率把key的访问记录到Count-Min Sketch中，
+ * 一个统计周期内访问次数超过阈值的key会被提升到进程内缓存，在短时间内不再访问Redis
+ * 订阅缓存失效频道，按模式批量删除key后所有节点清空进程内缓存
+ */
+@Component
+public class HotKeyDetector implements MessageListener {
+    //统计矩阵的深度和宽度
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 8192;
+    //候选热点key的数量为topK的倍数
+    private static final int CANDIDATE_FACTOR = 4;
+
+    @Value("${redis.hot-key.enabled:false}")
+    private Boolean enabled;
+    @Value("${redis.hot-key.sample-rate:0.1}")
+    private Double sampleRate;
+    @Value("${redis.hot-key.window:10s}")
+    private Duration window;
+    @Value("${redis.hot-key.threshold:1000}")
+    private Long threshold;
+    @Value("${redis.hot-key.top-k:20}")
+    private Integer topK;
+    @Value("${redis.hot-key.local-ttl:1s}")
+    private Duration localTtl;
+    @Value("${redis.hot-key.local-max-size:1000}")
+    private Integer localMaxSize;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+    //当前周期内访问次数较多的候选key及其估计次数
+    private final ConcurrentMap<String, Long> candidates = new ConcurrentHashMap<>();
+    //当前周期和上一周期被提升的热点key
+    private volatile Set<String> currentHotKeys = ConcurrentHashMap.newKeySet();
+    private volatile Set<String> previousHotKeys = Collections.emptySet();
+    private volatile List<Map<String, Object>> lastTopKeys = Collections.emptyList();
+    private volatile long windowStart = System.currentTimeMillis();
+    private long sampleWeight;
+    private Cache<String, Object> localCache;
+    private Counter localHit;
+
+    @PostConstruct
+    public void init() {
+        sampleWeight = Math.max(1, Math.round(1 / sampleRate));
+        localCache = CacheUtil.newLRUCache(localMaxSize, localTtl.toMillis());
+        localHit = Counter.builder("redis.hotkey.local.hits").register(meterRegistry);
+    }
+
+    /**
+     * 记录一次key的访问，返回该key当前是否为热点key
+     */
+    public boolean record(String key) {
+        if (!enabled) {
+            return false;
+        }
+        rotateIfNecessary();
+        if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            long estimate = sketch.add(key, sampleWeight);
+            trackCandidate(key, estimate);
+            if (estimate >= threshold) {
+                currentHotKeys.add(key);
+            }
+        }
+        return currentHotKeys.contains(key) || previousHotKeys.contains(key);
+    }
+
+    public Object getLocal(String key) {
+        Object value = localCache.get(key, false);
+        if (value != null) {
+            localHit.increment();
+        }
+        return value;
+    }
+
+    public void putLocal(String key, Object value) {
+        if (value != null) {
+            localCache.put(key, value);
+        }
+    }
+
+    /**
+     * key被修改时清除本节点的进程内缓存，其他节点的缓存最迟在local-ttl后过期
+     */
+    public void invalidate(String key) {
+        if (enabled) {
+            localCache.remove(key);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (enabled && NearCacheManager.CLEAR_ALL_MESSAGE.equals(new String(message.getBody(), StandardCharsets.UTF_8))) {
+            localCache.clear();
+        }
+    }
+
+    /**
+     * 上一个统计周期访问次数最多的key及每秒访问次数
+     */
+    public List<Map<String, Object>> getTopKeys() {
+        rotateIfNecessary();
+        return lastTopKeys;
+    }
+
+    private void trackCandidate(String key, long estimate) {
+        if (candidates.containsKey(key) || candidates.size() < topK * CANDIDATE_FACTOR) {
+            candidates.put(key, estimate);
+            return;
+        }
+        //候选已满时，替换掉次数最少的候选key
+        candidates.entrySet().stream().min(Map.Entry.comparingByValue()).ifPresent(min -> {
+            if (estimate > min.getValue() && candidates.remove(min.getKey(), min.getValue())) {
+                candidates.put(key, estimate);
+            }
+        });
+    }
+
+    private void rotateIfNecessary() {
+        long now = System.currentTimeMillis();
+        if (now - windowStart < window.toMillis()) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStart < window.toMillis()) {
+                return;
+            }
+            double seconds = (now - windowStart) / 1000.0;
+            lastTopKeys = candidates.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                    .limit(topK)
+                    .map(entry -> {
+                        Map<String, Object> item = new LinkedHashMap<>();
+                        item.put("key", entry.getKey());
+                        item.put("count", entry.getValue());
+                        item.put("rate", Math.round(entry.getValue() / seconds));
+                        item.put("hot", currentHotKeys.contains(entry.getKey()));
+                        return item;
+                    })
+                    .collect(Collectors.toList());
+            previousHotKeys = currentHotKeys;
+            currentHotKeys = ConcurrentHashMap.newKeySet();
+            candidates.clear();
+            sketch.clear();
+            windowStart = now;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.lzy.mall.tiny.component;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 查看当前热点key的监控端点：/actuator/hotkeys
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+    @Autowired
+    private HotKeyDetector hotKeyDetector;
+
+    @ReadOperation
+    public List<Map<String, Object>> hotKeys() {
+        return hotKeyDetector.getTopKeys();
+    }
+}
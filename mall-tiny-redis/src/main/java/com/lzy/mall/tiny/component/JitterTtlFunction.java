@@ -0,0 +1,32 @@
+package com.lzy.mall.tiny.component;
+
+import org.springframework.data.redis.cache.RedisCacheWriter;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 带随机抖动的缓存过期时间：在基础过期时间上随机增加0~jitter%，
+ * 预热或批量写入的缓存不会在同一时刻集中过期，避免缓存雪崩
+ * 值中已经带有过期时间时（{@link CachedValue}）按该时间过期，保证Redis中的过期时间与值中记录的一致
+ */
+public class JitterTtlFunction implements RedisCacheWriter.TtlFunction {
+    private final Duration ttl;
+    private final long maxJitterMillis;
+
+    public JitterTtlFunction(Duration ttl, int jitterPercent) {
+        this.ttl = ttl;
+        this.maxJitterMillis = ttl.toMillis() * Math.max(0, jitterPercent) / 100;
+    }
+
+    @Override
+    public Duration getTimeToLive(Object key, Object value) {
+        if (value instanceof CachedValue cachedValue && cachedValue.getExpireAt() > 0) {
+            return Duration.ofMillis(Math.max(1, cachedValue.getExpireAt() - System.currentTimeMillis()));
+        }
+        if (maxJitterMillis <= 0) {
+            return ttl;
+        }
+        return ttl.plusMillis(ThreadLocalRandom.current().nextLong(maxJitterMillis + 1));
+    }
+}
@@ -0,0 +1,114 @@
+package com.lzy.mall.tiny.component;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.SerializerFactory;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.esotericsoftware.kryo.util.Pool;
+import com.lzy.mall.tiny.mbg.model.PmsBrand;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.TreeMap;
+
+/**
+ * 基于Kryo的二进制序列化器
+ * 常用类型注册为整数编号，不再把类名写入每个值；缓存的实体类按显式的字段编号编码，不写字段名，增删字段后仍能读取旧数据，
+ * 其他未单独注册序列化器的类型按字段名兼容读取
+ */
+public class KryoRedisSerializer implements RedisSerializer<Object> {
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+    private static final int BUFFER_SIZE = 512;
+
+    //Kryo实例非线程安全，使用对象池复用
+    private final Pool<Kryo> kryoPool = new Pool<Kryo>(true, false, 64) {
+        @Override
+        protected Kryo create() {
+            return createKryo();
+        }
+    };
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY_ARRAY;
+        }
+        Kryo kryo = kryoPool.obtain();
+        try {
+            Output output = new Output(BUFFER_SIZE, -1);
+            kryo.writeClassAndObject(output, value);
+            return output.toBytes();
+        } catch (Exception e) {
+            throw new SerializationException("Could not write Kryo: " + e.getMessage(), e);
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        Kryo kryo = kryoPool.obtain();
+        try {
+            return kryo.readClassAndObject(new Input(bytes));
+        } catch (Exception e) {
+            throw new SerializationException("Could not read Kryo: " + e.getMessage(), e);
+        } finally {
+            kryoPool.free(kryo);
+        }
+    }
+
+    private static Kryo createKryo() {
+        Kryo kryo = new Kryo();
+        //未注册的类型仍可序列化，此时会写入类名
+        kryo.setRegistrationRequired(false);
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        //按字段名分块编码，读取时可跳过不认识的字段
+        CompatibleFieldSerializer.CompatibleFieldSerializerConfig config = new CompatibleFieldSerializer.CompatibleFieldSerializerConfig();
+        config.setChunkedEncoding(true);
+        kryo.setDefaultSerializer(new SerializerFactory.CompatibleFieldSerializerFactory(config));
+        //注册编号写入缓存后不能再修改，新增类型只能追加
+        kryo.register(PmsBrand.class, createBrandSerializer(), 100);
+        kryo.register(ArrayList.class, 101);
+        kryo.register(LinkedList.class, 102);
+        kryo.register(HashMap.class, 103);
+        kryo.register(LinkedHashMap.class, 104);
+        kryo.register(TreeMap.class, 105);
+        kryo.register(HashSet.class, 106);
+        kryo.register(Date.class, 107);
+        kryo.register(CachedValue.class, new TaggedFieldKryoSerializer<>(CachedValue::new)
+                .objectField(1, CachedValue::getValue, CachedValue::setValue)
+                .longField(2, CachedValue::getExpireAt, CachedValue::setExpireAt)
+                .longField(3, CachedValue::getDelta, CachedValue::setDelta), 108);
+        return kryo;
+    }
+
+    /**
+     * 品牌的字段编号，编号写入缓存后不能再修改，删除的字段编号不能再使用
+     */
+    private static TaggedFieldKryoSerializer<PmsBrand> createBrandSerializer() {
+        return new TaggedFieldKryoSerializer<>(PmsBrand::new)
+                .longField(1, PmsBrand::getId, PmsBrand::setId)
+                .stringField(2, PmsBrand::getName, PmsBrand::setName)
+                .stringField(3, PmsBrand::getFirstLetter, PmsBrand::setFirstLetter)
+                .intField(4, PmsBrand::getSort, PmsBrand::setSort)
+                .intField(5, PmsBrand::getFactoryStatus, PmsBrand::setFactoryStatus)
+                .intField(6, PmsBrand::getShowStatus, PmsBrand::setShowStatus)
+                .intField(7, PmsBrand::getProductCount, PmsBrand::setProductCount)
+                .intField(8, PmsBrand::getProductCommentCount, PmsBrand::setProductCommentCount)
+                .stringField(9, PmsBrand::getLogo, PmsBrand::setLogo)
+                .stringField(10, PmsBrand::getBigPic, PmsBrand::setBigPic)
+                .stringField(11, PmsBrand::getBrandStory, PmsBrand::setBrandStory);
+    }
+}
@@ -0,0 +1,65 @@
+package com.lzy.mall.tiny.component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基于进程内位数组的布隆过滤器，用于没有Redis服务的offheap profile，与{@link RedisBloomFilter}使用相同的哈希算法
+ * 与Redis实现一致，initialize完成前一律视为可能存在
+ */
+public class LocalBloomFilter implements BloomFilter {
+    private final BloomFilterHasher hasher;
+    private final AtomicLongArray words;
+    private volatile boolean initialized;
+
+    public LocalBloomFilter(long expectedInsertions, double fpp) {
+        this.hasher = new BloomFilterHasher(expectedInsertions, fpp);
+        this.words = new AtomicLongArray((int) ((hasher.getBitSize() + 63) / 64));
+    }
+
+    @Override
+    public boolean mightContain(Object value) {
+        if (!initialized) {
+            return true;
+        }
+        for (long offset : hasher.offsets(value)) {
+            if ((words.get((int) (offset >>> 6)) & (1L << offset)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public List<Boolean> mightContainAll(List<?> values) {
+        List<Boolean> result = new ArrayList<>(values.size());
+        values.forEach(value -> result.add(mightContain(value)));
+        return result;
+    }
+
+    @Override
+    public void add(Object value) {
+        for (long offset : hasher.offsets(value)) {
+            long mask = 1L << offset;
+            words.accumulateAndGet((int) (offset >>> 6), mask, (word, bit) -> word | bit);
+        }
+    }
+
+    @Override
+    public void addAll(Collection<?> values) {
+        values.forEach(this::add);
+    }
+
+    @Override
+    public void initialize(Collection<?> values) {
+        addAll(values);
+        initialized = true;
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return initialized;
+    }
+}
@@ -0,0 +1,136 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.CacheObj;
+import cn.hutool.cache.impl.LRUCache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * offheap profile下@Cacheable使用的进程内缓存：LRU淘汰并按写入时间过期，不缓存空结果
+ * 不存在的ID由布隆过滤器和空值缓存拦截，随机ID的请求不会让缓存无限增长
+ */
+public class LocalCache implements org.springframework.cache.Cache {
+    private final String name;
+    private final String keyPrefix;
+    private final LRUCache<Object, Object> localCache;
+    //key -> 正在加载的结果，同一个key同时只有一个线程调用加载方法，与@Cacheable(sync = true)的语义一致
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * @param keyPrefix 与Redis缓存相同的key前缀，按模式删除时用于匹配
+     */
+    public LocalCache(String name, String keyPrefix, int maxSize, long ttlMillis) {
+        this.name = name;
+        this.keyPrefix = keyPrefix;
+        this.localCache = CacheUtil.newLRUCache(maxSize, ttlMillis);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return localCache;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        //读取时不刷新过期时间，保证TTL从写入时算起
+        Object value = localCache.get(key, false);
+        return value != null ? new SimpleValueWrapper(value) : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        Object value = localCache.get(key, false);
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object value = localCache.get(key, false);
+        if (value != null) {
+            return (T) value;
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw new ValueRetrievalException(key, valueLoader, e.getCause());
+            }
+        }
+        try {
+            value = valueLoader.call();
+            //空结果不缓存，与@Cacheable(unless = "#result==null")的效果一致
+            if (value != null) {
+                localCache.put(key, value);
+            }
+            future.complete(value);
+            return (T) value;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        if (value == null) {
+            localCache.remove(key);
+        } else {
+            localCache.put(key, value);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        localCache.remove(key);
+    }
+
+    @Override
+    public void clear() {
+        localCache.clear();
+    }
+
+    public int size() {
+        return localCache.size();
+    }
+
+    /**
+     * 删除完整key（前缀+缓存key）满足条件的缓存，返回删除的数量
+     */
+    public long evictIf(Predicate<String> matcher) {
+        List<Object> keys = new ArrayList<>();
+        //加锁复制后遍历，不影响并发读写
+        Iterator<CacheObj<Object, Object>> iterator = localCache.cacheObjIterator();
+        while (iterator.hasNext()) {
+            Object key = iterator.next().getKey();
+            if (matcher.test(keyPrefix + key)) {
+                keys.add(key);
+            }
+        }
+        keys.forEach(localCache::remove);
+        return keys.size();
+    }
+}
@@ -0,0 +1,50 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.core.util.StrUtil;
+import com.lzy.mall.tiny.config.RedisCacheProperties;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+/**
+ * offheap profile下的缓存管理器，按缓存名称创建{@link LocalCache}
+ * 过期时间与Redis缓存使用相同的配置（redis.cache.specs/defaults），每个缓存的条目数不超过maxSize
+ */
+public class LocalCacheManager implements CacheManager {
+    private final RedisCacheProperties cacheProperties;
+    private final int maxSize;
+    private final ConcurrentMap<String, LocalCache> caches = new ConcurrentHashMap<>();
+
+    public LocalCacheManager(RedisCacheProperties cacheProperties, int maxSize) {
+        this.cacheProperties = cacheProperties;
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    /**
+     * 删除完整key满足条件的缓存，与Redis缓存的key格式（前缀+缓存key）一致，返回删除的数量
+     */
+    public long evictIf(Predicate<String> matcher) {
+        return caches.values().stream().mapToLong(cache -> cache.evictIf(matcher)).sum();
+    }
+
+    private LocalCache createCache(String name) {
+        RedisCacheProperties.CacheSpec spec = cacheProperties.getSpecs().getOrDefault(name, cacheProperties.getDefaults());
+        String keyPrefix = StrUtil.isNotEmpty(spec.getKeyPrefix()) ? spec.getKeyPrefix() : name + "::";
+        return new LocalCache(name, keyPrefix, maxSize, spec.getTtl().toMillis());
+    }
+}
@@ -0,0 +1,216 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 二级缓存：进程内LRU缓存（L1）+ Redis缓存（L2）
+ * L1有容量上限和过期时间，失效通知由{@link NearCacheManager}通过Redis发布订阅广播到其他节点
+ */
+public class NearCache implements org.springframework.cache.Cache {
+    private final String name;
+    private final org.springframework.cache.Cache delegate;
+    private final NearCacheManager cacheManager;
+    private final Cache<Object, ValueWrapper> localCache;
+    private final Counter l1Hit;
+    private final Counter l1Miss;
+    private final Counter l2Hit;
+    private final Counter l2Miss;
+    private final Timer l1Timer;
+    private final Timer l2Timer;
+
+    public NearCache(String name, org.springframework.cache.Cache delegate, NearCacheManager cacheManager,
+                     int maxSize, long ttlMillis, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.delegate = delegate;
+        this.cacheManager = cacheManager;
+        this.localCache = CacheUtil.newLRUCache(maxSize, ttlMillis);
+        this.l1Hit = counter(meterRegistry, "l1", "hit");
+        this.l1Miss = counter(meterRegistry, "l1", "miss");
+        this.l2Hit = counter(meterRegistry, "l2", "hit");
+        this.l2Miss = counter(meterRegistry, "l2", "miss");
+        this.l1Timer = timer(meterRegistry, "l1");
+        this.l2Timer = timer(meterRegistry, "l2");
+        Gauge.builder("cache.near.hit.ratio", l1Hit, hit -> ratio(hit, l1Miss))
+                .tag("cache", name).tag("level", "l1").register(meterRegistry);
+        Gauge.builder("cache.near.hit.ratio", l2Hit, hit -> ratio(hit, l2Miss))
+                .tag("cache", name).tag("level", "l2").register(meterRegistry);
+        Gauge.builder("cache.near.size", localCache, Cache::size)
+                .tag("cache", name).register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        long start = System.nanoTime();
+        //先查进程内缓存，读取时不刷新过期时间，保证TTL从写入时算起
+        ValueWrapper local = localCache.get(key, false);
+        l1Timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (local != null) {
+            l1Hit.increment();
+            return local;
+        }
+        l1Miss.increment();
+        //本地未命中时再访问Redis，命中后回填本地缓存
+        ValueWrapper remote = l2Timer.record(() -> delegate.get(key));
+        if (remote != null) {
+            l2Hit.increment();
+            localCache.put(key, remote);
+        } else {
+            l2Miss.increment();
+        }
+        return remote;
+    }
+
+    /**
+     * 只读取进程内缓存，用于批量读取时先过滤掉L1命中的key，未命中的key由调用方批量读取Redis
+     */
+    public ValueWrapper getLocal(Object key) {
+        long start = System.nanoTime();
+        ValueWrapper local = localCache.get(key, false);
+        l1Timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (local != null) {
+            l1Hit.increment();
+        } else {
+            l1Miss.increment();
+        }
+        return local;
+    }
+
+    /**
+     * 只写入进程内缓存，用于调用方已经批量写入或读取过Redis的情况
+     */
+    public void putLocal(Object key, Object value) {
+        localCache.put(key, new SimpleValueWrapper(value));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        long start = System.nanoTime();
+        ValueWrapper local = localCache.get(key, false);
+        l1Timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (local != null) {
+            l1Hit.increment();
+            return (T) local.get();
+        }
+        l1Miss.increment();
+        //Redis中没有缓存时才会调用加载方法，据此区分L2是否命中
+        AtomicBoolean loaded = new AtomicBoolean();
+        T value = l2Timer.record(() -> delegate.get(key, () -> {
+            loaded.set(true);
+            return valueLoader.call();
+        }));
+        if (loaded.get()) {
+            l2Miss.increment();
+        } else {
+            l2Hit.increment();
+        }
+        //空结果不缓存，与@Cacheable(unless = "#result==null")的效果一致
+        if (value != null) {
+            localCache.put(key, new SimpleValueWrapper(value));
+        }
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        localCache.put(key, new SimpleValueWrapper(value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        localCache.put(key, existing != null ? existing : new SimpleValueWrapper(value));
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        localCache.remove(key);
+        cacheManager.publishEvict(name, key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = delegate.evictIfPresent(key);
+        localCache.remove(key);
+        cacheManager.publishEvict(name, key);
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        localCache.clear();
+        cacheManager.publishEvict(name, null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = delegate.invalidate();
+        localCache.clear();
+        cacheManager.publishEvict(name, null);
+        return present;
+    }
+
+    /**
+     * 只清理本节点的进程内缓存，用于处理其他节点广播过来的失效通知
+     */
+    void evictLocal(Object key) {
+        if (key == null) {
+            localCache.clear();
+        } else {
+            localCache.remove(key);
+        }
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String level, String result) {
+        return Counter.builder("cache.near.gets")
+                .tag("cache", name).tag("level", level).tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Timer timer(MeterRegistry meterRegistry, String level) {
+        return Timer.builder("cache.near.latency")
+                .tag("cache", name).tag("level", level)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    private static double ratio(Counter hit, Counter miss) {
+        double total = hit.count() + miss.count();
+        return total == 0 ? 0 : hit.count() / total;
+    }
+}
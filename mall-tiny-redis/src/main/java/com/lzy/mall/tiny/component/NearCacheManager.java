@@ -0,0 +1,111 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 二级缓存管理器，在原有的Redis缓存管理器外包一层进程内缓存
+ * 缓存被删除时通过Redis发布订阅通知其他节点清理各自的进程内缓存，
+ * L2一般为{@link SingleFlightCacheManager}，防止热点key过期时大量请求同时访问数据库
+ */
+public class NearCacheManager implements CacheManager, MessageListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NearCacheManager.class);
+    /**
+     * 缓存失效通知的频道
+     */
+    public static final String INVALIDATION_CHANNEL = "mall:cache:invalidation";
+    /**
+     * 表示全部缓存的缓存名称
+     */
+    public static final String ALL_CACHES = "*";
+    private static final String SEPARATOR = "\n";
+    /**
+     * 清空所有节点（包括发送方自己）全部进程内缓存的通知，按模式批量删除Redis中的key后发送
+     */
+    public static final String CLEAR_ALL_MESSAGE = evictMessage("", ALL_CACHES, null);
+
+    private final CacheManager delegate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxSize;
+    private final long ttlMillis;
+    //节点标识，用于忽略自己发出的失效通知
+    private final String nodeId = IdUtil.fastSimpleUUID();
+    private final ConcurrentMap<String, NearCache> cacheMap = new ConcurrentHashMap<>();
+
+    public NearCacheManager(CacheManager delegate, StringRedisTemplate stringRedisTemplate,
+                            MeterRegistry meterRegistry, int maxSize, long ttlMillis) {
+        this.delegate = delegate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        NearCache cache = cacheMap.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        return cacheMap.computeIfAbsent(name, key -> new NearCache(key, target, this, maxSize, ttlMillis, meterRegistry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    /**
+     * 广播缓存失效通知，key为空时表示清空整个缓存
+     */
+    void publishEvict(String cacheName, Object key) {
+        String message = evictMessage(nodeId, cacheName, key);
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, message);
+        } catch (Exception e) {
+            //通知失败时其他节点的进程内缓存最迟在TTL到期后失效
+            LOGGER.warn("publish cache invalidation failed:{}", message, e);
+        }
+    }
+
+    /**
+     * 生成缓存失效通知，发送方不是任何节点时所有节点都会清理进程内缓存
+     */
+    static String evictMessage(String sender, String cacheName, Object key) {
+        return sender + SEPARATOR + cacheName + SEPARATOR + (key == null ? "" : key);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(SEPARATOR, 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        if (ALL_CACHES.equals(parts[1])) {
+            cacheMap.values().forEach(cache -> cache.evictLocal(null));
+            return;
+        }
+        NearCache cache = cacheMap.get(parts[1]);
+        if (cache != null) {
+            cache.evictLocal(StrUtil.isEmpty(parts[2]) ? null : parts[2]);
+        }
+    }
+}
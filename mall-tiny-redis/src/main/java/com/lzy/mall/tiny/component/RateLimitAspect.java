@@ -0,0 +1,64 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.core.util.StrUtil;
+import com.lzy.mall.tiny.common.annotation.RateLimit;
+import com.lzy.mall.tiny.common.api.CommonResult;
+import com.lzy.mall.tiny.common.api.ResultCode;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.Principal;
+
+/**
+ * 处理{@link RateLimit}注解的切面，超过限制时返回429
+ */
+@Aspect
+@Component
+public class RateLimitAspect {
+    @Autowired
+    private RedisRateLimiter redisRateLimiter;
+
+    @Around("@annotation(rateLimit)")
+    public Object around(ProceedingJoinPoint joinPoint, RateLimit rateLimit) throws Throwable {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return joinPoint.proceed();
+        }
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        String name = StrUtil.isEmpty(rateLimit.name()) ? signature.getMethod().getName() : rateLimit.name();
+        String key = name + ":" + getClientKey(attributes.getRequest(), rateLimit.keyType());
+        if (redisRateLimiter.tryAcquire(key, rateLimit.limit(), rateLimit.period())) {
+            return joinPoint.proceed();
+        }
+        HttpServletResponse response = attributes.getResponse();
+        if (response != null) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        }
+        if (CommonResult.class.isAssignableFrom(signature.getReturnType())) {
+            return CommonResult.failed(ResultCode.TOO_MANY_REQUESTS);
+        }
+        throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private String getClientKey(HttpServletRequest request, RateLimit.KeyType keyType) {
+        if (keyType == RateLimit.KeyType.USER) {
+            Principal principal = request.getUserPrincipal();
+            if (principal != null) {
+                return "user:" + principal.getName();
+            }
+        }
+        //不直接读取X-Forwarded-For，客户端可以伪造其中的地址绕过限流；经过代理时由Tomcat的RemoteIpValve
+        //（server.forward-headers-strategy=native）从右往左跳过受信任的代理，得到真实的客户端地址
+        return "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,127 @@
+package com.lzy.mall.tiny.component;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于Redis位图的布隆过滤器，多个节点共享同一份数据
+ * 判断不存在时一定不存在，判断存在时有一定误判率；元素只能添加不能删除
+ * 位数组之后的一位作为初始化标记，与数据保存在同一个key中，Redis重启或淘汰该key时标记和数据一起丢失，
+ * 单独的增量添加只会重新创建没有标记的key，不会让只包含新元素的过滤器拦截已存在的ID
+ */
+public class RedisBloomFilter implements BloomFilter {
+    /**
+     * 所有位都为1时才可能存在，ARGV[1]为初始化标记的位置，未初始化时一律视为可能存在，一次网络往返完成
+     */
+    private static final RedisScript<Boolean> CONTAINS_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GETBIT', KEYS[1], ARGV[1]) == 0 then return 1 end " +
+            "for i = 2, #ARGV do if redis.call('GETBIT', KEYS[1], ARGV[i]) == 0 then return 0 end end return 1", Boolean.class);
+    /**
+     * 批量判断，ARGV[1]为每个元素的位置个数，ARGV[2]为初始化标记的位置，其后依次为各个元素的位置，返回每个元素是否可能存在
+     */
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CONTAINS_ALL_SCRIPT = new DefaultRedisScript<>(
+            "local k = tonumber(ARGV[1]) local initialized = redis.call('GETBIT', KEYS[1], ARGV[2]) local result = {} " +
+            "for i = 3, #ARGV, k do local found = 1 " +
+            "if initialized == 1 then for j = i, i + k - 1 do if redis.call('GETBIT', KEYS[1], ARGV[j]) == 0 then found = 0 break end end end " +
+            "result[#result + 1] = found end return result", List.class);
+    private static final RedisScript<Boolean> ADD_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #ARGV do redis.call('SETBIT', KEYS[1], ARGV[i], 1) end return 1", Boolean.class);
+    //每次批量添加的元素个数
+    private static final int BATCH_SIZE = 1000;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String key;
+    private final BloomFilterHasher hasher;
+    //初始化标记的位置，紧跟在位数组之后
+    private final String markerOffset;
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp                期望的误判率
+     */
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate, String key, long expectedInsertions, double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.key = key;
+        this.hasher = new BloomFilterHasher(expectedInsertions, fpp);
+        this.markerOffset = String.valueOf(hasher.getBitSize());
+    }
+
+    @Override
+    public boolean mightContain(Object value) {
+        List<String> args = new ArrayList<>(hasher.getHashCount() + 1);
+        args.add(markerOffset);
+        Collections.addAll(args, offsets(value));
+        return Boolean.TRUE.equals(stringRedisTemplate.execute(CONTAINS_SCRIPT, Collections.singletonList(key), args.toArray()));
+    }
+
+    /**
+     * 一次网络往返判断多个元素，结果顺序与values一致
+     */
+    @Override
+    public List<Boolean> mightContainAll(List<?> values) {
+        if (values.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> args = new ArrayList<>(values.size() * hasher.getHashCount() + 2);
+        args.add(String.valueOf(hasher.getHashCount()));
+        args.add(markerOffset);
+        values.forEach(value -> Collections.addAll(args, offsets(value)));
+        List<?> found = stringRedisTemplate.execute(CONTAINS_ALL_SCRIPT, Collections.singletonList(key), args.toArray());
+        List<Boolean> result = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            result.add(found == null || Long.valueOf(1).equals(found.get(i)));
+        }
+        return result;
+    }
+
+    @Override
+    public void add(Object value) {
+        stringRedisTemplate.execute(ADD_SCRIPT, Collections.singletonList(key), offsets(value));
+    }
+
+    @Override
+    public void addAll(Collection<?> values) {
+        List<String> args = new ArrayList<>(BATCH_SIZE * hasher.getHashCount());
+        int count = 0;
+        for (Object value : values) {
+            Collections.addAll(args, offsets(value));
+            if (++count % BATCH_SIZE == 0) {
+                stringRedisTemplate.execute(ADD_SCRIPT, Collections.singletonList(key), args.toArray());
+                args.clear();
+            }
+        }
+        if (!args.isEmpty()) {
+            stringRedisTemplate.execute(ADD_SCRIPT, Collections.singletonList(key), args.toArray());
+        }
+    }
+
+    /**
+     * 先添加全部元素再设置初始化标记，中途失败时标记不存在，判断结果不会生效
+     */
+    @Override
+    public void initialize(Collection<?> values) {
+        addAll(values);
+        stringRedisTemplate.opsForValue().setBit(key, hasher.getBitSize(), true);
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForValue().getBit(key, hasher.getBitSize()));
+    }
+
+    private String[] offsets(Object value) {
+        long[] offsets = hasher.offsets(value);
+        String[] args = new String[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            args[i] = String.valueOf(offsets[i]);
+        }
+        return args;
+    }
+}
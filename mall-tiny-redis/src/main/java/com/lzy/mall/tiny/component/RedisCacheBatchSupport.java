@@ -0,0 +1,127 @@
+package com.lzy.mall.tiny.component;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 对Spring Cache中的Redis缓存进行批量读写，key前缀、序列化方式、过期时间和值的格式与@Cacheable保持一致
+ * offheap profile下没有Redis缓存管理器，逐个读写进程内缓存
+ */
+@Component
+public class RedisCacheBatchSupport {
+    @Autowired(required = false)
+    private RedisCacheManager redisCacheManager;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * 一次MGET读取多个缓存，结果顺序与cacheKeys一致，未命中的位置为null
+     */
+    public List<Object> multiGet(String cacheName, List<String> cacheKeys) {
+        if (cacheKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (redisCacheManager == null) {
+            Cache localCache = cacheManager.getCache(cacheName);
+            return cacheKeys.stream().map(cacheKey -> {
+                Cache.ValueWrapper wrapper = localCache.get(cacheKey);
+                return wrapper != null ? wrapper.get() : null;
+            }).collect(Collectors.toList());
+        }
+        RedisCache cache = getCache(cacheName);
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        byte[][] keys = new byte[cacheKeys.size()][];
+        for (int i = 0; i < cacheKeys.size(); i++) {
+            keys[i] = serializeKey(cache, cacheKeys.get(i));
+        }
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(keys));
+        List<Object> result = new ArrayList<>(cacheKeys.size());
+        for (int i = 0; i < cacheKeys.size(); i++) {
+            byte[] value = values == null ? null : values.get(i);
+            Object object = value == null ? null : CachedValue.unwrap(configuration.getValueSerializationPair().read(ByteBuffer.wrap(value)));
+            //缓存的空值视为未命中
+            result.add(object instanceof NullValue ? null : object);
+        }
+        return result;
+    }
+
+    /**
+     * 通过管道一次写入多个缓存，只写入不存在的key（SET NX），返回实际写入的缓存key
+     * 用于从数据库读取后回填和预热：读取数据库之后发生的修改会先删除缓存，随后又可能被其他请求回填了新数据，
+     * 覆盖写入会用本次读到的旧数据替换新数据，并保留到过期
+     */
+    public Set<String> multiPutIfAbsent(String cacheName, Map<String, ?> entries) {
+        if (entries.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> written = new HashSet<>();
+        if (redisCacheManager == null) {
+            Cache localCache = cacheManager.getCache(cacheName);
+            entries.forEach((cacheKey, value) -> {
+                if (localCache.putIfAbsent(cacheKey, value) == null) {
+                    written.add(cacheKey);
+                }
+            });
+            return written;
+        }
+        RedisCache cache = getCache(cacheName);
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        List<String> cacheKeys = new ArrayList<>(entries.keySet());
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            entries.forEach((cacheKey, value) -> {
+                byte[] key = serializeKey(cache, cacheKey);
+                Duration ttl = configuration.getTtlFunction().getTimeToLive(cacheKey, value);
+                //与SingleFlightCache写入的格式一致，带上过期时间用于提前刷新
+                CachedValue cachedValue = new CachedValue(value, System.currentTimeMillis() + ttl.toMillis(), 0);
+                byte[] bytes = toBytes(configuration.getValueSerializationPair().write(cachedValue));
+                connection.stringCommands().set(key, bytes, Expiration.from(ttl), RedisStringCommands.SetOption.ifAbsent());
+            });
+            return null;
+        });
+        for (int i = 0; i < cacheKeys.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                written.add(cacheKeys.get(i));
+            }
+        }
+        return written;
+    }
+
+    private RedisCache getCache(String cacheName) {
+        return (RedisCache) redisCacheManager.getCache(cacheName);
+    }
+
+    private static byte[] serializeKey(RedisCache cache, String cacheKey) {
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        String keyPrefix = configuration.getKeyPrefixFor(cache.getName());
+        return toBytes(configuration.getKeySerializationPair().write(keyPrefix + cacheKey));
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
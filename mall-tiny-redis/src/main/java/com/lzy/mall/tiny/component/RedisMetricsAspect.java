@@ -0,0 +1,145 @@
+package com.lzy.mall.tiny.component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 统计RedisService每个操作的耗时、传输的值大小和异常次数，按操作名称和key前缀打标签，
+ * 可通过/actuator/metrics/redis.command查看，耗时超过阈值的操作输出慢日志
+ * key前缀只使用配置中列出的前缀，其他key统一标记为other，保证标签数量有上限
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(prefix = "redis.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RedisMetricsAspect {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisMetricsAspect.class);
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+    private static final String PREFIX_NONE = "none";
+    private static final String PREFIX_OTHER = "other";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${redis.metrics.slow-threshold:50ms}")
+    private Duration slowThreshold;
+    @Value("${redis.metrics.key-prefixes:mall:pms:brand:list,mall:pms:brand:hash,mall:pms:brand:view,mall:null:pms:brand,redis:simple,redis:hash,redis:set,redis:list,redis:batch}")
+    private List<String> keyPrefixes;
+
+    //按长度从长到短排列，优先匹配更具体的前缀
+    private List<String> sortedPrefixes;
+    //操作名称和key前缀 -> 已注册的指标，避免每次调用都构建和查找指标
+    private final ConcurrentMap<String, CommandMeters> metersCache = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        sortedPrefixes = keyPrefixes.stream()
+                .filter(prefix -> !prefix.isEmpty())
+                .sorted(Comparator.comparingInt(String::length).reversed())
+                .collect(Collectors.toList());
+    }
+
+    @Around("execution(* com.lzy.mall.tiny.service.RedisService.*(..))")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        String operation = joinPoint.getSignature().getName();
+        Object[] args = joinPoint.getArgs();
+        String key = getKey(args.length > 0 ? args[0] : null);
+        String prefix = getKeyPrefix(key);
+        long startBytes = ByteCountingRedisSerializer.currentBytes();
+        long start = System.nanoTime();
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            Counter.builder("redis.command.errors")
+                    .tag("operation", operation)
+                    .tag("prefix", prefix)
+                    .tag("exception", e.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .increment();
+            throw e;
+        } finally {
+            long duration = System.nanoTime() - start;
+            long bytes = ByteCountingRedisSerializer.currentBytes() - startBytes;
+            CommandMeters meters = metersCache.computeIfAbsent(operation + ":" + prefix, k -> new CommandMeters(operation, prefix));
+            meters.timer.record(duration, TimeUnit.NANOSECONDS);
+            meters.bytes.record(bytes);
+            if (duration >= slowThreshold.toNanos()) {
+                LOGGER.warn("slow redis command, operation:{}, key:{}, duration:{}ms, bytes:{}",
+                        operation, key, TimeUnit.NANOSECONDS.toMillis(duration), bytes);
+            }
+        }
+    }
+
+    /**
+     * 批量操作取第一个key
+     */
+    private String getKey(Object arg) {
+        if (arg instanceof String key) {
+            return key;
+        }
+        if (arg instanceof Collection<?> collection && !collection.isEmpty()) {
+            return getKey(collection.iterator().next());
+        }
+        if (arg instanceof Map<?, ?> map && !map.isEmpty()) {
+            return getKey(map.keySet().iterator().next());
+        }
+        return null;
+    }
+
+    /**
+     * 取key匹配的配置前缀，如mall:pms:brand:list:3:1:5的前缀为mall:pms:brand:list，没有匹配的前缀时为other
+     */
+    private String getKeyPrefix(String key) {
+        if (key == null) {
+            return PREFIX_NONE;
+        }
+        for (String prefix : sortedPrefixes) {
+            if (key.startsWith(prefix) && (key.length() == prefix.length() || key.charAt(prefix.length()) == ':')) {
+                return prefix;
+            }
+        }
+        return PREFIX_OTHER;
+    }
+
+    /**
+     * 一种操作和key前缀对应的耗时和值大小指标
+     */
+    private final class CommandMeters {
+        private final Timer timer;
+        private final DistributionSummary bytes;
+
+        private CommandMeters(String operation, String prefix) {
+            timer = Timer.builder("redis.command")
+                    .tag("operation", operation)
+                    .tag("prefix", prefix)
+                    .publishPercentiles(PERCENTILES)
+                    .register(meterRegistry);
+            bytes = DistributionSummary.builder("redis.command.bytes")
+                    .baseUnit("bytes")
+                    .tag("operation", operation)
+                    .tag("prefix", prefix)
+                    .publishPercentiles(PERCENTILES)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于Redis的分布式令牌桶限流器，令牌的计算和扣减在Lua脚本中原子完成，时间取Redis服务器时间，不受各节点时钟影响
+ * 本地先按固定窗口计数做预检查，单个节点在一个窗口内收到的请求已超过令牌桶理论上限时直接拒绝，不再访问Redis
+ * 开启local-only时（offheap profile）只使用进程内的令牌桶，算法与Lua脚本相同，限流范围为单个节点
+ */
+@Component
+public class RedisRateLimiter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisRateLimiter.class);
+    private static final String KEY_PREFIX = "mall:rate:limit:";
+    /**
+     * 令牌桶脚本，ARGV[1]为容量，ARGV[2]为每毫秒补充的令牌数，ARGV[3]为key过期时间（毫秒），返回1表示放行
+     */
+    private static final RedisScript<Long> TOKEN_BUCKET_SCRIPT = new DefaultRedisScript<>(
+            "local capacity = tonumber(ARGV[1]) " +
+            "local rate = tonumber(ARGV[2]) " +
+            "local time = redis.call('TIME') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts') " +
+            "local tokens = tonumber(bucket[1]) or capacity " +
+            "local ts = tonumber(bucket[2]) or now " +
+            "tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate) " +
+            "local allowed = 0 " +
+            "if tokens >= 1 then tokens = tokens - 1 allowed = 1 end " +
+            "redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', now) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[3]) " +
+            "return allowed", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${redis.rate-limit.local-max-size:100000}")
+    private Integer localMaxSize;
+    @Value("${redis.rate-limit.local-only:false}")
+    private boolean localOnly;
+
+    //限流key -> 本地当前窗口的请求计数
+    private Cache<String, LocalWindow> localWindows;
+    //限流key -> 进程内的令牌桶，只在local-only时使用
+    private Cache<String, LocalBucket> localBuckets;
+
+    @PostConstruct
+    public void init() {
+        localWindows = CacheUtil.newLRUCache(localMaxSize);
+        localBuckets = CacheUtil.newLRUCache(localMaxSize);
+    }
+
+    /**
+     * 尝试获取一个令牌，返回是否放行
+     */
+    public boolean tryAcquire(String key, int limit, int period) {
+        long periodMillis = period * 1000L;
+        if (localOnly) {
+            if (!localBuckets.get(key, false, () -> new LocalBucket(limit, (double) limit / periodMillis)).tryConsume()) {
+                meterRegistry.counter("rate.limit.rejected", "stage", "local").increment();
+                return false;
+            }
+            return true;
+        }
+        //令牌桶在一个周期内最多放行初始容量加补充量，即2倍limit，本地计数超过该值一定会被拒绝
+        if (localWindows.get(key, false, () -> new LocalWindow(periodMillis)).incrementAndGet() > limit * 2L) {
+            meterRegistry.counter("rate.limit.rejected", "stage", "local").increment();
+            return false;
+        }
+        Long allowed;
+        try {
+            allowed = stringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, Collections.singletonList(KEY_PREFIX + key),
+                    String.valueOf(limit), String.valueOf((double) limit / periodMillis), String.valueOf(periodMillis * 2));
+        } catch (Exception e) {
+            //Redis不可用时放行，只依靠本地预检查限流
+            LOGGER.warn("rate limit failed, key:{}", key, e);
+            return true;
+        }
+        if (allowed == null || allowed == 0) {
+            meterRegistry.counter("rate.limit.rejected", "stage", "redis").increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 进程内的令牌桶，令牌的计算方式与TOKEN_BUCKET_SCRIPT一致
+     */
+    private static final class LocalBucket {
+        private final int capacity;
+        private final double rate;
+        private double tokens;
+        private long ts = System.currentTimeMillis();
+
+        private LocalBucket(int capacity, double rate) {
+            this.capacity = capacity;
+            this.rate = rate;
+            this.tokens = capacity;
+        }
+
+        private synchronized boolean tryConsume() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(capacity, tokens + Math.max(0, now - ts) * rate);
+            ts = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 本地固定窗口计数器
+     */
+    private static final class LocalWindow {
+        private final long periodMillis;
+        private final AtomicLong count = new AtomicLong();
+        private volatile long windowStart = System.currentTimeMillis();
+
+        private LocalWindow(long periodMillis) {
+            this.periodMillis = periodMillis;
+        }
+
+        private long incrementAndGet() {
+            long now = System.currentTimeMillis();
+            if (now - windowStart >= periodMillis) {
+                synchronized (this) {
+                    if (now - windowStart >= periodMillis) {
+                        count.set(0);
+                        windowStart = now;
+                    }
+                }
+            }
+            return count.incrementAndGet();
+        }
+    }
+}
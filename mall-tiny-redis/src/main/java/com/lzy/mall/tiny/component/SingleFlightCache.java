@@ -0,0 +1,291 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.core.util.IdUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 防缓存击穿的Redis缓存包装类，用于@Cacheable(sync = true)的加载过程
+ * 同一个key在进程内只有一个线程加载，多节点之间通过Redis租约保证只有一个节点访问数据库；
+ * 缓存命中时按概率提前刷新（XFetch算法），快过期的缓存由一个调用方刷新，其他调用方继续使用旧值
+ * 写入的值包装为{@link CachedValue}，同时保存过期时间和加载耗时，判断是否提前刷新时不需要额外访问Redis
+ */
+public class SingleFlightCache implements Cache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SingleFlightCache.class);
+    private static final String LEASE_SUFFIX = ":lease";
+    //等待其他节点加载时的轮询间隔
+    private static final long WAIT_INTERVAL_MILLIS = 20;
+    //没有加载耗时记录时使用的默认值
+    private static final long DEFAULT_DELTA_MILLIS = 50;
+    /**
+     * 只删除自己持有的租约
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) else return 0 end", Long.class);
+
+    private final Cache delegate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Duration leaseTime;
+    private final double beta;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loadingMap = new ConcurrentHashMap<>();
+
+    public SingleFlightCache(Cache delegate, StringRedisTemplate stringRedisTemplate, Duration leaseTime,
+                             double beta, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.leaseTime = leaseTime;
+        this.beta = beta;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return unwrap(delegate.get(key));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper != null) {
+            if (shouldRefreshEarly(wrapper.get())) {
+                String token = tryLease(key);
+                if (token != null) {
+                    try {
+                        count("early_refresh");
+                        return load(key, valueLoader);
+                    } finally {
+                        releaseLease(key, token);
+                    }
+                }
+            }
+            return (T) CachedValue.unwrap(wrapper.get());
+        }
+        //进程内同一个key只有一个线程去加载，其他线程等待加载结果
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = loadingMap.putIfAbsent(key, future);
+        if (existing != null) {
+            count("local_wait");
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            Object value = loadWithLease(key, valueLoader);
+            future.complete(value);
+            return (T) value;
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(key, future);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, wrap(key, value, 0));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        return unwrap(delegate.putIfAbsent(key, wrap(key, value, 0)));
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        return delegate.invalidate();
+    }
+
+    /**
+     * 获取Redis租约后加载；租约被其他节点持有时等待其加载结果，
+     * 租约被释放后仍没有缓存（加载结果为空或加载失败）或等待超时时自己加载
+     */
+    private <T> T loadWithLease(Object key, Callable<T> valueLoader) {
+        String token = tryLease(key);
+        if (token != null) {
+            try {
+                count("load");
+                return load(key, valueLoader);
+            } finally {
+                releaseLease(key, token);
+            }
+        }
+        String leaseKey = redisKey(key) + LEASE_SUFFIX;
+        long deadline = System.currentTimeMillis() + leaseTime.toMillis();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(WAIT_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            //先检查租约再读取缓存，租约释放前写入的值一定能读到
+            boolean leaseHeld = Boolean.TRUE.equals(stringRedisTemplate.hasKey(leaseKey));
+            ValueWrapper wrapper = delegate.get(key);
+            if (wrapper != null) {
+                count("remote_wait");
+                @SuppressWarnings("unchecked")
+                T value = (T) CachedValue.unwrap(wrapper.get());
+                return value;
+            }
+            if (!leaseHeld) {
+                count("lease_released");
+                return load(key, valueLoader);
+            }
+        }
+        count("lease_timeout");
+        return load(key, valueLoader);
+    }
+
+    /**
+     * 从数据源加载并写入缓存，结果为空时不缓存
+     */
+    private <T> T load(Object key, Callable<T> valueLoader) {
+        long start = System.currentTimeMillis();
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        if (value != null) {
+            delegate.put(key, wrap(key, value, System.currentTimeMillis() - start));
+        }
+        return value;
+    }
+
+    /**
+     * XFetch算法：剩余过期时间 <= -delta * beta * ln(random)时提前刷新，
+     * 越接近过期、加载越慢，提前刷新的概率越大
+     */
+    private boolean shouldRefreshEarly(Object cached) {
+        if (beta <= 0 || !(cached instanceof CachedValue cachedValue) || cachedValue.getExpireAt() <= 0) {
+            return false;
+        }
+        long ttl = cachedValue.getExpireAt() - System.currentTimeMillis();
+        if (ttl <= 0) {
+            return false;
+        }
+        long delta = cachedValue.getDelta() > 0 ? cachedValue.getDelta() : DEFAULT_DELTA_MILLIS;
+        double gap = -delta * beta * Math.log(ThreadLocalRandom.current().nextDouble());
+        return gap >= ttl;
+    }
+
+    /**
+     * 包装为带过期时间和加载耗时的缓存值，过期时间按缓存配置计算，写入Redis时使用同一个过期时间
+     */
+    private Object wrap(Object key, Object value, long delta) {
+        if (value == null || !(delegate instanceof RedisCache redisCache)) {
+            return value;
+        }
+        Duration ttl = redisCache.getCacheConfiguration().getTtlFunction().getTimeToLive(key, value);
+        long expireAt = ttl.isZero() || ttl.isNegative() ? 0 : System.currentTimeMillis() + ttl.toMillis();
+        return new CachedValue(value, expireAt, delta);
+    }
+
+    private static ValueWrapper unwrap(ValueWrapper wrapper) {
+        if (wrapper == null || !(wrapper.get() instanceof CachedValue)) {
+            return wrapper;
+        }
+        return new SimpleValueWrapper(CachedValue.unwrap(wrapper.get()));
+    }
+
+    private String tryLease(Object key) {
+        String redisKey = redisKey(key);
+        if (redisKey == null) {
+            return IdUtil.fastSimpleUUID();
+        }
+        String token = IdUtil.fastSimpleUUID();
+        try {
+            Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(redisKey + LEASE_SUFFIX, token, leaseTime);
+            return Boolean.TRUE.equals(success) ? token : null;
+        } catch (Exception e) {
+            //Redis不可用时退化为只在进程内防击穿
+            LOGGER.warn("acquire cache lease failed:{}", redisKey, e);
+            return token;
+        }
+    }
+
+    private void releaseLease(Object key, String token) {
+        String redisKey = redisKey(key);
+        if (redisKey == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(redisKey + LEASE_SUFFIX), token);
+        } catch (Exception e) {
+            LOGGER.warn("release cache lease failed:{}", redisKey, e);
+        }
+    }
+
+    /**
+     * 缓存在Redis中的实际key，如mall::pms:brand:1
+     */
+    private String redisKey(Object key) {
+        if (delegate instanceof RedisCache redisCache) {
+            return redisCache.getCacheConfiguration().getKeyPrefixFor(getName()) + key;
+        }
+        return null;
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("cache.load", "cache", getName(), "result", result).increment();
+    }
+}
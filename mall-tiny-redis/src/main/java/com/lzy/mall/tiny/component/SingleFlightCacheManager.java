@@ -0,0 +1,51 @@
+package com.lzy.mall.tiny.component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 防击穿缓存管理器，把原有Redis缓存管理器中的缓存包装为{@link SingleFlightCache}
+ * 开启进程内缓存时作为{@link NearCacheManager}的L2，未开启时直接作为@Cacheable使用的缓存管理器
+ */
+public class SingleFlightCacheManager implements CacheManager {
+    private final CacheManager delegate;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Duration leaseTime;
+    private final double beta;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, SingleFlightCache> cacheMap = new ConcurrentHashMap<>();
+
+    public SingleFlightCacheManager(CacheManager delegate, StringRedisTemplate stringRedisTemplate, Duration leaseTime,
+                                    double beta, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.leaseTime = leaseTime;
+        this.beta = beta;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        SingleFlightCache cache = cacheMap.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        return cacheMap.computeIfAbsent(name, key -> new SingleFlightCache(target, stringRedisTemplate, leaseTime, beta, meterRegistry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
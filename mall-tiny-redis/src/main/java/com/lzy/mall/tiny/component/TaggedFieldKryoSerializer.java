@@ -0,0 +1,153 @@
+package com.lzy.mall.tiny.component;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 按显式编号编码字段的Kryo序列化器，效果与TaggedFieldSerializer相同，但不需要在MBG生成的实体类上加注解
+ * 每个非空字段只写入"编号+类型"一个字节头和字段值，不写字段名；读取时跳过不认识的编号，
+ * 新增字段后旧代码仍能读取新数据，删除字段后其编号不能再分配给其他字段
+ */
+public class TaggedFieldKryoSerializer<T> extends Serializer<T> {
+    //字段值的编码类型，占字段头的低3位
+    private static final int TYPE_VARINT = 0;
+    private static final int TYPE_STRING = 1;
+    private static final int TYPE_OBJECT = 2;
+    private static final int TYPE_BITS = 3;
+    //字段头为0表示字段结束
+    private static final int END = 0;
+
+    private final Supplier<T> constructor;
+    private final Map<Integer, TaggedField<T, ?>> fields = new TreeMap<>();
+
+    public TaggedFieldKryoSerializer(Supplier<T> constructor) {
+        this.constructor = constructor;
+    }
+
+    public TaggedFieldKryoSerializer<T> intField(int tag, Function<T, Integer> getter, BiConsumer<T, Integer> setter) {
+        return field(tag, TYPE_VARINT, getter, setter,
+                (kryo, output, value) -> output.writeVarInt(value, false), (kryo, input) -> input.readVarInt(false));
+    }
+
+    public TaggedFieldKryoSerializer<T> longField(int tag, Function<T, Long> getter, BiConsumer<T, Long> setter) {
+        return field(tag, TYPE_VARINT, getter, setter,
+                (kryo, output, value) -> output.writeVarLong(value, false), (kryo, input) -> input.readVarLong(false));
+    }
+
+    public TaggedFieldKryoSerializer<T> stringField(int tag, Function<T, String> getter, BiConsumer<T, String> setter) {
+        return field(tag, TYPE_STRING, getter, setter,
+                (kryo, output, value) -> output.writeString(value), (kryo, input) -> input.readString());
+    }
+
+    public TaggedFieldKryoSerializer<T> dateField(int tag, Function<T, Date> getter, BiConsumer<T, Date> setter) {
+        return field(tag, TYPE_VARINT, getter, setter,
+                (kryo, output, value) -> output.writeVarLong(value.getTime(), false), (kryo, input) -> new Date(input.readVarLong(false)));
+    }
+
+    /**
+     * 任意类型的字段，字段值连同类型一起写入
+     */
+    public TaggedFieldKryoSerializer<T> objectField(int tag, Function<T, Object> getter, BiConsumer<T, Object> setter) {
+        return field(tag, TYPE_OBJECT, getter, setter, Kryo::writeClassAndObject, Kryo::readClassAndObject);
+    }
+
+    private <V> TaggedFieldKryoSerializer<T> field(int tag, int type, Function<T, V> getter, BiConsumer<T, V> setter,
+                                                   FieldWriter<V> writer, FieldReader<V> reader) {
+        if (tag <= 0) {
+            throw new IllegalArgumentException("tag must be positive: " + tag);
+        }
+        if (fields.putIfAbsent(tag, new TaggedField<>(type, getter, setter, writer, reader)) != null) {
+            throw new IllegalArgumentException("duplicate tag: " + tag);
+        }
+        return this;
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, T object) {
+        for (Map.Entry<Integer, TaggedField<T, ?>> entry : fields.entrySet()) {
+            entry.getValue().write(kryo, output, entry.getKey(), object);
+        }
+        output.writeVarInt(END, true);
+    }
+
+    @Override
+    public T read(Kryo kryo, Input input, Class<? extends T> type) {
+        T object = constructor.get();
+        int header;
+        while ((header = input.readVarInt(true)) != END) {
+            TaggedField<T, ?> field = fields.get(header >>> TYPE_BITS);
+            int fieldType = header & ((1 << TYPE_BITS) - 1);
+            if (field != null && field.type == fieldType) {
+                field.read(kryo, input, object);
+            } else {
+                skip(kryo, input, fieldType);
+            }
+        }
+        return object;
+    }
+
+    /**
+     * 跳过新版本写入的、当前版本不认识的字段
+     */
+    private static void skip(Kryo kryo, Input input, int type) {
+        if (type == TYPE_VARINT) {
+            input.readVarLong(false);
+        } else if (type == TYPE_STRING) {
+            input.readString();
+        } else if (type == TYPE_OBJECT) {
+            kryo.readClassAndObject(input);
+        } else {
+            throw new KryoException("Unknown field type: " + type);
+        }
+    }
+
+    private static final class TaggedField<T, V> {
+        private final int type;
+        private final Function<T, V> getter;
+        private final BiConsumer<T, V> setter;
+        private final FieldWriter<V> writer;
+        private final FieldReader<V> reader;
+
+        private TaggedField(int type, Function<T, V> getter, BiConsumer<T, V> setter,
+                            FieldWriter<V> writer, FieldReader<V> reader) {
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+            this.writer = writer;
+            this.reader = reader;
+        }
+
+        private void write(Kryo kryo, Output output, int tag, T object) {
+            V value = getter.apply(object);
+            //为空的字段不写入，读取时保持为空
+            if (value != null) {
+                output.writeVarInt(tag << TYPE_BITS | type, true);
+                writer.write(kryo, output, value);
+            }
+        }
+
+        private void read(Kryo kryo, Input input, T object) {
+            setter.accept(object, reader.read(kryo, input));
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldWriter<V> {
+        void write(Kryo kryo, Output output, V value);
+    }
+
+    @FunctionalInterface
+    private interface FieldReader<V> {
+        V read(Kryo kryo, Input input);
+    }
+}
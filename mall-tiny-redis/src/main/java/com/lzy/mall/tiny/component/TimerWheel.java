@@ -0,0 +1,87 @@
+package com.lzy.mall.tiny.component;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 哈希时间轮：按到期时间把key放入对应的槽中，每次tick只检查当前槽，
+ * 添加和检查到期的开销与key总数无关，超过一圈的key留在槽中等到后续轮次再处理
+ * 同一个key重新设置到期时间后旧的记录不会删除，到期回调需要自行判断到期时间是否仍然有效
+ */
+public class TimerWheel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickMillis;
+    private final ConcurrentMap<String, Long>[] slots;
+    private final BiConsumer<String, Long> expireCallback;
+    private final ScheduledExecutorService executor;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int slotCount, long tickMillis, BiConsumer<String, Long> expireCallback) {
+        this.tickMillis = tickMillis;
+        this.slots = new ConcurrentMap[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new ConcurrentHashMap<>();
+        }
+        this.expireCallback = expireCallback;
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "timer-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 添加到期时间为expireAt（毫秒时间戳）的key
+     */
+    public void schedule(String key, long expireAt) {
+        slots[slotIndex(expireAt / tickMillis)].put(key, expireAt);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void tick() {
+        long targetTick = System.currentTimeMillis() / tickMillis;
+        //执行慢于预期时补齐中间跳过的槽
+        while (currentTick <= targetTick) {
+            expireSlot(slots[slotIndex(currentTick)]);
+            currentTick++;
+        }
+    }
+
+    private void expireSlot(ConcurrentMap<String, Long> slot) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Long>> iterator = slot.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            long expireAt = entry.getValue();
+            if (expireAt > now) {
+                continue;
+            }
+            slot.remove(entry.getKey(), expireAt);
+            try {
+                expireCallback.accept(entry.getKey(), expireAt);
+            } catch (Exception e) {
+                LOGGER.warn("timer wheel expire failed, key:{}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private int slotIndex(long tick) {
+        return (int) (tick % slots.length);
+    }
+}
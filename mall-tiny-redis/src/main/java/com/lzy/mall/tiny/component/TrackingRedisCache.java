@@ -0,0 +1,192 @@
+package com.lzy.mall.tiny.component;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.TrackingArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.push.PushMessage;
+import io.lettuce.core.codec.ByteArrayCodec;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 基于Redis 6客户端缓存（RESP3 CLIENT TRACKING）的进程内读缓存
+ * 读取通过一条开启了TRACKING的独立连接进行，key被任何客户端修改后Redis会主动推送失效消息，
+ * 收到消息后清除本地缓存，重复读取不再产生网络请求，同时保证多节点之间的数据一致
+ * 本地缓存按LRU淘汰，最多保存max-keys个key；本地保存的是Redis返回的原始字节，每次读取反序列化出新的对象
+ */
+@Component
+@Profile("!offheap")
+@ConditionalOnProperty(prefix = "redis.client-tracking", name = "enabled", havingValue = "true")
+public class TrackingRedisCache implements InitializingBean, DisposableBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrackingRedisCache.class);
+    private static final String INVALIDATE = "invalidate";
+    private static final String VALUE_FIELD = "value";
+    private static final String HASH_FIELD = "hash";
+    private static final String HASH_KEY_PREFIX = "hashKey:";
+    //缓存空值的占位对象
+    private static final Object NULL_VALUE = new Object();
+
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${redis.client-tracking.max-keys:10000}")
+    private Integer maxKeys;
+
+    private StatefulRedisConnection<byte[], byte[]> connection;
+    //Redis key -> 该key下缓存的各项读取结果，key失效时整体删除
+    private Cache<String, ConcurrentMap<String, Object>> localCache;
+    private Counter hitCounter;
+    private Counter missCounter;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!(redisConnectionFactory instanceof LettuceConnectionFactory factory)
+                || !(factory.getNativeClient() instanceof RedisClient client)) {
+            throw new IllegalStateException("Redis client tracking requires a standalone Lettuce connection");
+        }
+        //被淘汰的key服务端仍会推送失效消息，删除不存在的key没有影响
+        localCache = CacheUtil.newLRUCache(maxKeys);
+        connection = client.connect(ByteArrayCodec.INSTANCE);
+        connection.addListener(this::onPushMessage);
+        connection.addListener(new RedisConnectionStateListener() {
+            @Override
+            public void onRedisConnected(RedisChannelHandler<?, ?> handler, SocketAddress socketAddress) {
+                //断线重连后服务端不再记录之前的读取，清空本地缓存并重新开启TRACKING
+                localCache.clear();
+                connection.async().clientTracking(TrackingArgs.Builder.enabled());
+            }
+        });
+        connection.sync().clientTracking(TrackingArgs.Builder.enabled());
+        hitCounter = Counter.builder("redis.tracking.gets").tag("result", "hit").register(meterRegistry);
+        missCounter = Counter.builder("redis.tracking.gets").tag("result", "miss").register(meterRegistry);
+    }
+
+    @Override
+    public void destroy() {
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    public Object get(String key) {
+        byte[] bytes = read(key, VALUE_FIELD, () -> connection.sync().get(serializeKey(key)));
+        return valueSerializer().deserialize(bytes);
+    }
+
+    public Object hGet(String key, String hashKey) {
+        byte[] bytes = read(key, HASH_KEY_PREFIX + hashKey,
+                () -> connection.sync().hget(serializeKey(key), hashKeySerializer().serialize(hashKey)));
+        return hashValueSerializer().deserialize(bytes);
+    }
+
+    public Map<Object, Object> hGetAll(String key) {
+        Map<byte[], byte[]> entries = read(key, HASH_FIELD, () -> connection.sync().hgetall(serializeKey(key)));
+        Map<Object, Object> map = new LinkedHashMap<>(entries.size());
+        entries.forEach((hashKey, value) -> map.put(hashKeySerializer().deserialize(hashKey),
+                hashValueSerializer().deserialize(value)));
+        return map;
+    }
+
+    /**
+     * 写入前先清除本地缓存，保证本节点写后立即读取到新值，其他节点依靠服务端推送失效
+     */
+    public void invalidate(String key) {
+        localCache.remove(key);
+    }
+
+    /**
+     * 当前本地缓存的key数量
+     */
+    public int size() {
+        return localCache.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T read(String key, String field, Supplier<T> loader) {
+        ConcurrentMap<String, Object> entries = localCache.get(key);
+        Object cached = entries != null ? entries.get(field) : null;
+        if (cached != null && !(cached instanceof Loading)) {
+            hitCounter.increment();
+            return cached == NULL_VALUE ? null : (T) cached;
+        }
+        missCounter.increment();
+        entries = localCache.get(key, false, ConcurrentHashMap::new);
+        //先放入占位对象再读取，读取期间收到失效消息时占位所在的map会被删除，读取结果不会再被缓存
+        Loading loading = new Loading();
+        entries.put(field, loading);
+        T value = loader.get();
+        if (localCache.get(key, false) == entries) {
+            entries.replace(field, loading, value == null ? NULL_VALUE : value);
+        }
+        return value;
+    }
+
+    private void onPushMessage(PushMessage message) {
+        if (!INVALIDATE.equals(message.getType())) {
+            return;
+        }
+        List<Object> content = message.getContent(buffer -> StandardCharsets.UTF_8.decode(buffer).toString());
+        Object keys = content.size() > 1 ? content.get(1) : null;
+        if (keys instanceof List<?> keyList) {
+            keyList.forEach(key -> localCache.remove(String.valueOf(key)));
+        } else {
+            //FLUSHDB等操作会推送空的key列表，此时清空全部缓存
+            LOGGER.debug("redis tracking flush, clear local cache");
+            localCache.clear();
+        }
+    }
+
+    private byte[] serializeKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> valueSerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> hashKeySerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getHashKeySerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisSerializer<Object> hashValueSerializer() {
+        return (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+    }
+
+    /**
+     * 读取中的占位对象
+     */
+    private static final class Loading {
+    }
+}
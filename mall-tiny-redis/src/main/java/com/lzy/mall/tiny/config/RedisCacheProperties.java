@@ -0,0 +1,141 @@
+package com.lzy.mall.tiny.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按缓存名称配置的Redis缓存规格：过期时间、过期时间随机抖动比例、key前缀和内存预算
+ */
+@ConfigurationProperties(prefix = "redis.cache")
+public class RedisCacheProperties {
+    /**
+     * 未单独配置的缓存使用的默认规格
+     */
+    private CacheSpec defaults = new CacheSpec();
+    /**
+     * 缓存名称 -> 缓存规格
+     */
+    private Map<String, CacheSpec> specs = new LinkedHashMap<>();
+    /**
+     * 缓存内存采样配置
+     */
+    private Sampler sampler = new Sampler();
+
+    public CacheSpec getDefaults() {
+        return defaults;
+    }
+
+    public void setDefaults(CacheSpec defaults) {
+        this.defaults = defaults;
+    }
+
+    public Map<String, CacheSpec> getSpecs() {
+        return specs;
+    }
+
+    public void setSpecs(Map<String, CacheSpec> specs) {
+        this.specs = specs;
+    }
+
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    public void setSampler(Sampler sampler) {
+        this.sampler = sampler;
+    }
+
+    public static class CacheSpec {
+        /**
+         * 缓存过期时间
+         */
+        private Duration ttl = Duration.ofDays(1);
+        /**
+         * 过期时间随机增加的最大百分比，避免同时写入的缓存同时过期
+         */
+        private Integer jitter = 0;
+        /**
+         * Redis中的key前缀，为空时使用“缓存名称::”
+         */
+        private String keyPrefix;
+        /**
+         * 内存预算，采样估算的内存超出时输出告警，为空表示不限制
+         */
+        private DataSize budget;
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Integer getJitter() {
+            return jitter;
+        }
+
+        public void setJitter(Integer jitter) {
+            this.jitter = jitter;
+        }
+
+        public String getKeyPrefix() {
+            return keyPrefix;
+        }
+
+        public void setKeyPrefix(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        public DataSize getBudget() {
+            return budget;
+        }
+
+        public void setBudget(DataSize budget) {
+            this.budget = budget;
+        }
+    }
+
+    public static class Sampler {
+        /**
+         * 是否定时采样各缓存占用的内存
+         */
+        private Boolean enabled = true;
+        /**
+         * 采样间隔
+         */
+        private Duration interval = Duration.ofMinutes(5);
+        /**
+         * 每个缓存执行MEMORY USAGE的key数量，内存按平均值乘以key总数估算
+         */
+        private Integer sampleSize = 100;
+
+        public Boolean getEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getInterval() {
+            return interval;
+        }
+
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        public Integer getSampleSize() {
+            return sampleSize;
+        }
+
+        public void setSampleSize(Integer sampleSize) {
+            this.sampleSize = sampleSize;
+        }
+    }
+}
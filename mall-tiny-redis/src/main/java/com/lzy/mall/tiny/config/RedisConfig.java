@@ -1,23 +1,49 @@
 package com.lzy.mall.tiny.config;
 
+import cn.hutool.core.util.StrUtil;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.lzy.mall.tiny.component.BloomFilter;
+import com.lzy.mall.tiny.component.ByteCountingRedisSerializer;
+import com.lzy.mall.tiny.component.CompressRedisSerializer;
+import com.lzy.mall.tiny.component.HotKeyDetector;
+import com.lzy.mall.tiny.component.JitterTtlFunction;
+import com.lzy.mall.tiny.component.KryoRedisSerializer;
+import com.lzy.mall.tiny.component.LocalBloomFilter;
+import com.lzy.mall.tiny.component.LocalCacheManager;
+import com.lzy.mall.tiny.component.NearCacheManager;
+import com.lzy.mall.tiny.component.RedisBloomFilter;
+import com.lzy.mall.tiny.component.SingleFlightCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @auther macrozheng
@@ -27,16 +53,45 @@ import java.time.Duration;
  */
 @EnableCaching
 @Configuration
+@EnableConfigurationProperties(RedisCacheProperties.class)
 public class RedisConfig {
 
     /**
      * redis数据库自定义key
      */
     public  static final String REDIS_KEY_DATABASE="mall";
+    /**
+     * Kryo二进制序列化格式
+     */
+    public static final String SERIALIZER_FORMAT_KRYO = "kryo";
+
+    @Value("${redis.serializer.format:json}")
+    private String serializerFormat;
+
+    @Value("${redis.cache.compress.enabled:true}")
+    private Boolean compressEnabled;
+    @Value("${redis.cache.compress.threshold:1024}")
+    private Integer compressThreshold;
+
+    @Value("${redis.cache.near.max-size:10000}")
+    private Integer nearCacheMaxSize;
+    @Value("${redis.cache.near.ttl:30s}")
+    private Duration nearCacheTtl;
+    @Value("${redis.cache.local.max-size:10000}")
+    private Integer localCacheMaxSize;
+    @Value("${redis.bloom.brand.expected-insertions:100000}")
+    private Long brandBloomExpectedInsertions;
+    @Value("${redis.bloom.brand.fpp:0.01}")
+    private Double brandBloomFpp;
+    @Value("${redis.cache.load.lease-time:5s}")
+    private Duration loadLeaseTime;
+    @Value("${redis.cache.load.early-refresh-beta:1.0}")
+    private Double earlyRefreshBeta;
 
     @Bean
     public RedisTemplate<String, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
-        RedisSerializer<Object> serializer = redisSerializer();
+        //统计每次操作序列化的字节数，用于RedisService的指标
+        RedisSerializer<Object> serializer = new ByteCountingRedisSerializer(redisSerializer());
         RedisTemplate<String, Object> redisTemplate = new RedisTemplate<>();
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         redisTemplate.setKeySerializer(new StringRedisSerializer());
@@ -47,8 +102,34 @@ public class RedisConfig {
         return redisTemplate;
     }
 
+    /**
+     * 非阻塞的RedisTemplate，序列化方式与redisTemplate一致
+     */
+    @Bean
+    public ReactiveRedisTemplate<String, Object> reactiveRedisTemplate(ReactiveRedisConnectionFactory reactiveRedisConnectionFactory) {
+        RedisSerializer<Object> serializer = redisSerializer();
+        RedisSerializationContext<String, Object> serializationContext = RedisSerializationContext
+                .<String, Object>newSerializationContext(new StringRedisSerializer())
+                .value(serializer)
+                .hashKey(new StringRedisSerializer())
+                .hashValue(serializer)
+                .build();
+        return new ReactiveRedisTemplate<>(reactiveRedisConnectionFactory, serializationContext);
+    }
+
     @Bean
     public RedisSerializer<Object> redisSerializer() {
+        return createRedisSerializer(serializerFormat);
+    }
+
+    /**
+     * 创建值序列化器，format为kryo时使用Kryo二进制格式，否则使用JSON格式
+     * 切换格式后已有缓存无法读取，需要先清空
+     */
+    public static RedisSerializer<Object> createRedisSerializer(String format) {
+        if (SERIALIZER_FORMAT_KRYO.equalsIgnoreCase(format)) {
+            return new KryoRedisSerializer();
+        }
         //创建JSON序列化器
         Jackson2JsonRedisSerializer<Object> serializer = new Jackson2JsonRedisSerializer<>(Object.class);
         ObjectMapper objectMapper = new ObjectMapper();
@@ -60,12 +141,107 @@ public class RedisConfig {
     }
 
     @Bean
-    public RedisCacheManager redisCacheManager(RedisConnectionFactory redisConnectionFactory) {
+    @Profile("!offheap")
+    public RedisCacheManager redisCacheManager(RedisConnectionFactory redisConnectionFactory, RedisCacheProperties cacheProperties,
+                                               MeterRegistry meterRegistry) {
         RedisCacheWriter redisCacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(redisConnectionFactory);
-        //设置Redis缓存有效期为1天
-        RedisCacheConfiguration redisCacheConfiguration = RedisCacheConfiguration.defaultCacheConfig()
-                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(redisSerializer())).entryTtl(Duration.ofDays(1));
-        return new RedisCacheManager(redisCacheWriter, redisCacheConfiguration);
+        RedisSerializer<Object> serializer = redisSerializer();
+        if (compressEnabled) {
+            //超过阈值的缓存值压缩后再写入，减少Redis内存和网络传输
+            serializer = new CompressRedisSerializer(serializer, compressThreshold, meterRegistry);
+        }
+        RedisCacheConfiguration defaultConfiguration = createCacheConfiguration(serializer, cacheProperties.getDefaults());
+        //按缓存名称分别设置过期时间、过期抖动和key前缀
+        Map<String, RedisCacheConfiguration> initialConfigurations = new LinkedHashMap<>();
+        for (Map.Entry<String, RedisCacheProperties.CacheSpec> entry : cacheProperties.getSpecs().entrySet()) {
+            initialConfigurations.put(entry.getKey(), createCacheConfiguration(serializer, entry.getValue()));
+        }
+        return RedisCacheManager.builder(redisCacheWriter)
+                .cacheDefaults(defaultConfiguration)
+                .withInitialCacheConfigurations(initialConfigurations)
+                .build();
+    }
+
+    private RedisCacheConfiguration createCacheConfiguration(RedisSerializer<Object> serializer, RedisCacheProperties.CacheSpec spec) {
+        RedisCacheConfiguration configuration = RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(serializer))
+                .entryTtl(new JitterTtlFunction(spec.getTtl(), spec.getJitter()));
+        if (StrUtil.isNotEmpty(spec.getKeyPrefix())) {
+            configuration = configuration.computePrefixWith(cacheName -> spec.getKeyPrefix());
+        }
+        return configuration;
+    }
+
+    /**
+     * 二级缓存管理器：进程内缓存在前，带防击穿处理的Redis缓存在后，作为@Cacheable默认使用的缓存管理器
+     */
+    @Primary
+    @Bean
+    @Profile("!offheap")
+    @ConditionalOnProperty(prefix = "redis.cache.near", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public NearCacheManager nearCacheManager(RedisCacheManager redisCacheManager, StringRedisTemplate stringRedisTemplate,
+                                             MeterRegistry meterRegistry) {
+        SingleFlightCacheManager l2CacheManager = new SingleFlightCacheManager(redisCacheManager, stringRedisTemplate,
+                loadLeaseTime, earlyRefreshBeta, meterRegistry);
+        return new NearCacheManager(l2CacheManager, stringRedisTemplate, meterRegistry,
+                nearCacheMaxSize, nearCacheTtl.toMillis());
+    }
+
+    /**
+     * 未开启进程内缓存时，@Cacheable直接使用带防击穿处理的Redis缓存
+     */
+    @Primary
+    @Bean
+    @Profile("!offheap")
+    @ConditionalOnProperty(prefix = "redis.cache.near", name = "enabled", havingValue = "false")
+    public SingleFlightCacheManager singleFlightCacheManager(RedisCacheManager redisCacheManager, StringRedisTemplate stringRedisTemplate,
+                                                             MeterRegistry meterRegistry) {
+        return new SingleFlightCacheManager(redisCacheManager, stringRedisTemplate, loadLeaseTime, earlyRefreshBeta, meterRegistry);
+    }
+
+    /**
+     * 订阅缓存失效通知，清理本节点的二级缓存和热点key的进程内缓存
+     */
+    @Bean
+    @Profile("!offheap")
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                            ObjectProvider<NearCacheManager> nearCacheManager,
+                                                                            HotKeyDetector hotKeyDetector) {
+        ChannelTopic topic = new ChannelTopic(NearCacheManager.INVALIDATION_CHANNEL);
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        nearCacheManager.ifAvailable(listener -> container.addMessageListener(listener, topic));
+        container.addMessageListener(hotKeyDetector, topic);
+        return container;
+    }
+
+    /**
+     * 已存在品牌ID的布隆过滤器，用于拦截不存在的ID，防止缓存穿透
+     */
+    @Bean
+    @Profile("!offheap")
+    public BloomFilter brandBloomFilter(StringRedisTemplate stringRedisTemplate) {
+        return new RedisBloomFilter(stringRedisTemplate, REDIS_KEY_DATABASE + ":bloom:pms:brand",
+                brandBloomExpectedInsertions, brandBloomFpp);
+    }
+
+    /**
+     * offheap profile下没有Redis服务，@Cacheable使用进程内缓存，单节点部署不需要跨节点失效和分布式租约
+     * 过期时间与Redis缓存的配置相同，每个缓存的条目数有上限，空结果不缓存
+     */
+    @Bean
+    @Profile("offheap")
+    public LocalCacheManager localCacheManager(RedisCacheProperties cacheProperties) {
+        return new LocalCacheManager(cacheProperties, localCacheMaxSize);
+    }
+
+    /**
+     * offheap profile下使用进程内的布隆过滤器
+     */
+    @Bean(name = "brandBloomFilter")
+    @Profile("offheap")
+    public BloomFilter localBrandBloomFilter() {
+        return new LocalBloomFilter(brandBloomExpectedInsertions, brandBloomFpp);
     }
 
 }
@@ -1,5 +1,6 @@
 package com.lzy.mall.tiny.controller;
 
+import com.lzy.mall.tiny.common.annotation.RateLimit;
 import com.lzy.mall.tiny.common.api.CommonPage;
 import com.lzy.mall.tiny.common.api.CommonResult;
 import com.lzy.mall.tiny.mbg.model.PmsBrand;
@@ -79,13 +80,27 @@ public class PmsBrandController {
         }
     }
 
+    @RateLimit(name = "brand:read", limit = 100, period = 1)
     @Operation(summary = "获取指定id的品牌详情")
     @RequestMapping(value = "/{id}", method = RequestMethod.GET)
     @ResponseBody
     public CommonResult<PmsBrand> getItem(@PathVariable("id") Long id) {
-        return CommonResult.success(brandService.getItem(id));
+        PmsBrand brand = brandService.getItem(id);
+        if (brand != null) {
+            brandService.increaseViewCount(id);
+        }
+        return CommonResult.success(brand);
     }
 
+    @RateLimit(name = "brand:read", limit = 100, period = 1)
+    @Operation(summary = "获取指定id品牌详情的浏览量")
+    @RequestMapping(value = "/{id}/viewCount", method = RequestMethod.GET)
+    @ResponseBody
+    public CommonResult<Long> getViewCount(@PathVariable("id") Long id) {
+        return CommonResult.success(brandService.getViewCount(id));
+    }
+
+    @RateLimit(name = "brand:read", limit = 100, period = 1)
     @Operation(summary = "分页查询品牌列表")
     @RequestMapping(value = "/list", method = RequestMethod.GET)
     @ResponseBody
@@ -97,10 +112,27 @@ public class PmsBrandController {
         return CommonResult.success(CommonPage.restPage(brandList));
     }
 
+    @RateLimit(name = "brand:read", limit = 100, period = 1)
     @Operation(summary = "获取所有品牌列表")
     @RequestMapping(value = "listAll", method = RequestMethod.GET)
     @ResponseBody
     public CommonResult<List<PmsBrand>> getAll() {
         return CommonResult.success(brandService.ListAll());
     }
+
+    @RateLimit(name = "brand:read", limit = 100, period = 1)
+    @Operation(summary = "批量获取指定id的品牌详情")
+    @RequestMapping(value = "/batch", method = RequestMethod.GET)
+    @ResponseBody
+    public CommonResult<List<PmsBrand>> getItems(@RequestParam("ids") List<Long> ids) {
+        return CommonResult.success(brandService.getItems(ids));
+    }
+
+    @RateLimit(name = "brand:read", limit = 100, period = 1)
+    @Operation(summary = "获取指定id品牌的部分属性，如name,logo")
+    @RequestMapping(value = "/{id}/fields", method = RequestMethod.GET)
+    @ResponseBody
+    public CommonResult<PmsBrand> getItemFields(@PathVariable("id") Long id, @RequestParam("fields") List<String> fields) {
+        return CommonResult.success(brandService.getItemFields(id, fields));
+    }
 }
@@ -5,27 +5,55 @@ import cn.hutool.core.util.ArrayUtil;
 import com.lzy.mall.tiny.common.api.CommonResult;
 import com.lzy.mall.tiny.mbg.model.PmsBrand;
 import com.lzy.mall.tiny.service.PmsBrandService;
+import com.lzy.mall.tiny.service.ReactiveRedisService;
 import com.lzy.mall.tiny.service.RedisService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Controller
 @Tag(name = "RedisController", description = "redis测试")
 @RequestMapping("/redis")
 public class RedisController {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisController.class);
     @Autowired
     private RedisService redisService;
     @Autowired
     private PmsBrandService brandService;
+    @Autowired
+    private ReactiveRedisService reactiveRedisService;
+    @Value("${redis.invalidate.allowed-prefixes:mall::,redis:}")
+    private List<String> invalidateAllowedPrefixes;
+    //按模式删除的任务同一时间只执行一个，执行期间再提交的任务直接拒绝
+    private final ExecutorService invalidateExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new SynchronousQueue<>(), runnable -> new Thread(runnable, "redis-del-by-pattern"));
+
+    @PreDestroy
+    public void destroy() {
+        invalidateExecutor.shutdownNow();
+    }
 
     @Operation(summary = "测试简单缓存")
     @RequestMapping(value = "/simpleTest", method = RequestMethod.GET)
@@ -97,4 +125,112 @@ public class RedisController {
         List<Object> cachedBrandList = redisService.lRange(key, 0, 3);
         return CommonResult.success(cachedBrandList);
     }
+
+    @Operation(summary = "测试批量操作与逐个操作的耗时对比")
+    @RequestMapping(value = "/batchTest", method = RequestMethod.GET)
+    @ResponseBody
+    public CommonResult<Map<String, Object>> batchTest() {
+        //获取第一页的50条品牌数据
+        List<PmsBrand> brandList = brandService.list(1, 50);
+        Map<String, Object> brandMap = new LinkedHashMap<>();
+        for (PmsBrand brand : brandList) {
+            brandMap.put("redis:batch:" + brand.getId(), brand);
+        }
+        List<String> keys = new ArrayList<>(brandMap.keySet());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", keys.size());
+        //逐个写入和读取，每个key一次网络往返
+        long start = System.nanoTime();
+        brandMap.forEach((key, value) -> redisService.set(key, value, 60));
+        result.put("setOneByOneMicros", (System.nanoTime() - start) / 1000);
+        start = System.nanoTime();
+        keys.forEach(key -> redisService.get(key));
+        result.put("getOneByOneMicros", (System.nanoTime() - start) / 1000);
+        //批量写入和读取，整页数据只需一次网络往返
+        start = System.nanoTime();
+        redisService.mSet(brandMap, 60);
+        result.put("mSetMicros", (System.nanoTime() - start) / 1000);
+        start = System.nanoTime();
+        redisService.mGet(keys);
+        result.put("mGetMicros", (System.nanoTime() - start) / 1000);
+        redisService.del(keys);
+        return CommonResult.success(result);
+    }
+
+    @Operation(summary = "按模式批量删除缓存，如mall::pms:brand:*，只允许删除指定前缀的key，在后台异步执行")
+    @RequestMapping(value = "/delByPattern", method = RequestMethod.POST)
+    @ResponseBody
+    public CommonResult<String> delByPattern(@RequestParam String pattern) {
+        if (invalidateAllowedPrefixes.stream().noneMatch(prefix -> !prefix.isEmpty() && pattern.startsWith(prefix))) {
+            return CommonResult.validateFailed("只允许删除以下前缀的key：" + invalidateAllowedPrefixes);
+        }
+        try {
+            invalidateExecutor.execute(() -> {
+                long start = System.currentTimeMillis();
+                Long deleted = redisService.delByPattern(pattern);
+                LOGGER.info("delete by pattern finished, pattern:{}, deleted:{}, cost:{}ms", pattern, deleted,
+                        System.currentTimeMillis() - start);
+            });
+        } catch (RejectedExecutionException e) {
+            return CommonResult.failed("已有批量删除任务在执行，请稍后再试");
+        }
+        return CommonResult.success(pattern, "批量删除任务已提交");
+    }
+
+    @Operation(summary = "测试简单缓存（非阻塞）")
+    @RequestMapping(value = "/reactive/simpleTest", method = RequestMethod.GET)
+    @ResponseBody
+    public Mono<CommonResult<PmsBrand>> reactiveSimpleTest() {
+        return listBrand(5).flatMap(brandList -> {
+            PmsBrand brand = brandList.get(0);
+            String key = "redis:simple:" + brand.getId();
+            return reactiveRedisService.set(key, brand)
+                    .then(reactiveRedisService.get(key))
+                    .map(cacheBrand -> CommonResult.success((PmsBrand) cacheBrand));
+        });
+    }
+
+    @Operation(summary = "测试Hash结构的缓存（非阻塞）")
+    @RequestMapping(value = "/reactive/hashTest", method = RequestMethod.GET)
+    @ResponseBody
+    public Mono<CommonResult<PmsBrand>> reactiveHashTest() {
+        return listBrand(5).flatMap(brandList -> {
+            PmsBrand brand = brandList.get(0);
+            String key = "redis:hash:" + brand.getId();
+            return reactiveRedisService.hSetAll(key, BeanUtil.beanToMap(brand))
+                    .then(reactiveRedisService.hGetAll(key))
+                    .map(cacheValue -> CommonResult.success(BeanUtil.toBean(cacheValue, PmsBrand.class)));
+        });
+    }
+
+    @Operation(summary = "测试Set结构的缓存（非阻塞）")
+    @RequestMapping(value = "/reactive/setTest", method = RequestMethod.GET)
+    @ResponseBody
+    public Mono<CommonResult<List<Object>>> reactiveSetTest() {
+        String key = "redis:set:all";
+        return listBrand(5).flatMap(brandList -> reactiveRedisService.sAdd(key, brandList.toArray())
+                .then(reactiveRedisService.sRemove(key, brandList.get(0)))
+                .thenMany(reactiveRedisService.sMembers(key))
+                .collectList()
+                .map(CommonResult::success));
+    }
+
+    @Operation(summary = "测试List结构的缓存（非阻塞）")
+    @RequestMapping(value = "/reactive/listTest", method = RequestMethod.GET)
+    @ResponseBody
+    public Mono<CommonResult<List<Object>>> reactiveListTest() {
+        String key = "redis:list:all";
+        return listBrand(5).flatMap(brandList -> reactiveRedisService.lPushAll(key, brandList.toArray())
+                .then(reactiveRedisService.lRemove(key, 1, brandList.get(0)))
+                .thenMany(reactiveRedisService.lRange(key, 0, 3))
+                .collectList()
+                .map(CommonResult::success));
+    }
+
+    /**
+     * 数据库查询是阻塞操作，放到专用的线程池中执行
+     */
+    private Mono<List<PmsBrand>> listBrand(int pageSize) {
+        return Mono.fromCallable(() -> brandService.list(1, pageSize)).subscribeOn(Schedulers.boundedElastic());
+    }
 }
@@ -0,0 +1,27 @@
+package com.lzy.mall.tiny.dao;
+
+import com.lzy.mall.tiny.domain.PmsBrandOutbox;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 品牌变更发件箱Dao
+ */
+public interface PmsBrandOutboxDao {
+    /**
+     * 按写入顺序读取最早的一批变更
+     */
+    List<PmsBrandOutbox> selectBatch(@Param("limit") Integer limit);
+
+    /**
+     * 最早一条未处理变更的写入时间，发件箱为空时返回null
+     */
+    Date selectOldestCreateTime();
+
+    /**
+     * 删除已处理的变更
+     */
+    int deleteByIds(@Param("ids") List<Long> ids);
+}
@@ -0,0 +1,45 @@
+package com.lzy.mall.tiny.domain;
+
+import java.util.Date;
+
+/**
+ * 品牌变更发件箱记录
+ */
+public class PmsBrandOutbox {
+    private Long id;
+    private Long brandId;
+    private String operation;
+    private Date createTime;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getBrandId() {
+        return brandId;
+    }
+
+    public void setBrandId(Long brandId) {
+        this.brandId = brandId;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public Date getCreateTime() {
+        return createTime;
+    }
+
+    public void setCreateTime(Date createTime) {
+        this.createTime = createTime;
+    }
+}
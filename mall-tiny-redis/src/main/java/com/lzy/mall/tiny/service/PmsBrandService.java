@@ -3,6 +3,7 @@ package com.lzy.mall.tiny.service;
 
 import com.lzy.mall.tiny.mbg.model.PmsBrand;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface PmsBrandService {
@@ -15,6 +16,26 @@ public interface PmsBrandService {
 
     PmsBrand getItem(Long id);
 
+    /**
+     * 批量获取品牌，结果顺序与ids一致，不存在的品牌不返回
+     */
+    List<PmsBrand> getItems(Collection<Long> ids);
+
+    /**
+     * 获取品牌的部分属性，只有fields中的属性有值
+     */
+    PmsBrand getItemFields(Long id, Collection<String> fields);
+
+    /**
+     * 品牌详情浏览量加1，增量在本地累加后批量写入Redis
+     */
+    void increaseViewCount(Long id);
+
+    /**
+     * 获取品牌详情浏览量，不包含本地尚未写入Redis的增量
+     */
+    Long getViewCount(Long id);
+
     List<PmsBrand> list(Integer pageNum, Integer pageSize);
 
     List<PmsBrand> ListAll();
@@ -0,0 +1,103 @@
+package com.lzy.mall.tiny.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 非阻塞的Redis操作Service，与RedisService使用相同的序列化方式，两者写入的数据可以互相读取
+ */
+public interface ReactiveRedisService {
+
+    /**
+     * 保存属性
+     */
+    Mono<Boolean> set(String key, Object value, long time);
+
+    /**
+     * 保存属性
+     */
+    Mono<Boolean> set(String key, Object value);
+
+    /**
+     * 获取属性
+     */
+    Mono<Object> get(String key);
+
+    /**
+     * 批量获取属性
+     */
+    Mono<List<Object>> mGet(List<String> keys);
+
+    /**
+     * 删除属性
+     */
+    Mono<Long> del(String... keys);
+
+    /**
+     * 设置过期时间
+     */
+    Mono<Boolean> expire(String key, long time);
+
+    /**
+     * 判断是否有该属性
+     */
+    Mono<Boolean> hasKey(String key);
+
+    /**
+     * 按delta递增
+     */
+    Mono<Long> incr(String key, long delta);
+
+    /**
+     * 获取Hash结构中的属性
+     */
+    Mono<Object> hGet(String key, String hashKey);
+
+    /**
+     * 向Hash结构中放入一个属性
+     */
+    Mono<Boolean> hSet(String key, String hashKey, Object value);
+
+    /**
+     * 直接获取整个Hash结构
+     */
+    Mono<Map<Object, Object>> hGetAll(String key);
+
+    /**
+     * 直接设置整个Hash结构
+     */
+    Mono<Boolean> hSetAll(String key, Map<String, Object> map);
+
+    /**
+     * 获取Set结构
+     */
+    Flux<Object> sMembers(String key);
+
+    /**
+     * 向Set结构中添加属性
+     */
+    Mono<Long> sAdd(String key, Object... values);
+
+    /**
+     * 删除Set结构中的属性
+     */
+    Mono<Long> sRemove(String key, Object... values);
+
+    /**
+     * 获取List结构中的属性
+     */
+    Flux<Object> lRange(String key, long start, long end);
+
+    /**
+     * 向List结构中批量添加属性
+     */
+    Mono<Long> lPushAll(String key, Object... values);
+
+    /**
+     * 从List结构中移除属性
+     */
+    Mono<Long> lRemove(String key, long count, Object value);
+}
@@ -1,8 +1,10 @@
 package com.lzy.mall.tiny.service;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public interface RedisService {
 
@@ -21,6 +23,21 @@ public interface RedisService {
      */
     Object get(String key);
 
+    /**
+     * 批量获取属性（MGET，一次网络往返）
+     */
+    List<Object> mGet(List<String> keys);
+
+    /**
+     * 批量保存属性（管道方式，一次网络往返）
+     */
+    void mSet(Map<String, Object> map, long time);
+
+    /**
+     * 批量保存属性（MSET，一次网络往返）
+     */
+    void mSet(Map<String, Object> map);
+
     /**
      * 删除属性
      */
@@ -31,6 +48,11 @@ public interface RedisService {
      */
     Long del(List<String> keys);
 
+    /**
+     * 按模式批量删除属性，通过SCAN分批遍历并UNLINK，按限速执行不会阻塞Redis，返回删除的数量
+     */
+    Long delByPattern(String pattern);
+
     /**
      * 设置过期时间
      */
@@ -56,6 +78,11 @@ public interface RedisService {
      */
     Long decr(String key, long delta);
 
+    /**
+     * 按delta异步递增，增量在本地累加后批量写入Redis
+     */
+    void bufferedIncr(String key, long delta);
+
     /**
      * 获取Hash结构中的属性
      */
@@ -71,11 +98,26 @@ public interface RedisService {
      */
     void hSet(String key, String hashKey, Object value);
 
+    /**
+     * 批量获取Hash结构中的属性（HMGET），结果顺序与hashKeys一致
+     */
+    List<Object> hMGet(String key, Collection<String> hashKeys);
+
     /**
      * 直接获取整个Hash结构
      */
     Map<Object, Object> hGetAll(String key);
 
+    /**
+     * 批量获取多个Hash结构（管道方式，一次网络往返），结果顺序与keys一致
+     */
+    List<Map<Object, Object>> mHGetAll(List<String> keys);
+
+    /**
+     * 以流的方式遍历Hash结构（HSCAN分页读取），遍历期间有修改时可能返回重复属性，使用完毕后需要关闭
+     */
+    Stream<Map.Entry<Object, Object>> hStream(String key);
+
     /**
      * 直接设置整个Hash结构
      */
@@ -106,11 +148,21 @@ public interface RedisService {
      */
     Long hDecr(String key, String hashKey, Long delta);
 
+    /**
+     * Hash结构中属性异步递增，增量在本地累加后批量写入Redis
+     */
+    void bufferedHIncr(String key, String hashKey, long delta);
+
     /**
      * 获取Set结构
      */
     Set<Object> sMembers(String key);
 
+    /**
+     * 以流的方式遍历Set结构（SSCAN分页读取），遍历期间有修改时可能返回重复属性，使用完毕后需要关闭
+     */
+    Stream<Object> sStream(String key);
+
     /**
      * 向Set结构中添加属性
      */
@@ -141,6 +193,11 @@ public interface RedisService {
      */
     List<Object> lRange(String key, long start, long end);
 
+    /**
+     * 以流的方式遍历List结构（LRANGE分页读取），遍历期间有插入或删除时可能遗漏或重复读取属性
+     */
+    Stream<Object> lStream(String key);
+
     /**
      * 获取List结构的长度
      */
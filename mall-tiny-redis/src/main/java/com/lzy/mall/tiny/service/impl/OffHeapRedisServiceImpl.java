@@ -0,0 +1,667 @@
+package com.lzy.mall.tiny.service.impl;
+
+import com.lzy.mall.tiny.component.ByteCountingRedisSerializer;
+import com.lzy.mall.tiny.component.LocalCacheManager;
+import com.lzy.mall.tiny.component.TimerWheel;
+import com.lzy.mall.tiny.service.RedisService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 进程内的RedisService实现，用于没有Redis服务的单节点部署和测试，通过offheap profile启用
+ * key和Hash属性名保存在堆内，值按与RedisTemplate相同的序列化方式保存在堆外内存中，
+ * 过期的key由时间轮定时删除，读取时也会检查是否过期
+ * 同一个key上的操作串行执行，与Redis单线程执行命令的语义一致
+ * 每个值单独分配一块堆外内存，不做池化：删除或覆盖后由GC回收ByteBuffer对象时才释放，
+ * 总量受-XX:MaxDirectMemorySize限制（默认与最大堆相同），超过时写入抛出OutOfMemoryError: Direct buffer memory，
+ * 适合值数量和大小都有限的场景，大量小值的频繁写入会放大GC压力
+ */
+@Service
+@Profile("offheap")
+public class OffHeapRedisServiceImpl implements RedisService, DisposableBean {
+    private static final String WRONG_TYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    @Autowired
+    private RedisSerializer<Object> redisSerializer;
+    @Autowired(required = false)
+    private LocalCacheManager localCacheManager;
+    @Value("${redis.offheap.wheel-slots:512}")
+    private Integer wheelSlots;
+    @Value("${redis.offheap.tick-millis:100}")
+    private Long tickMillis;
+
+    private final ConcurrentMap<String, Entry> store = new ConcurrentHashMap<>();
+    private RedisSerializer<Object> serializer;
+    private TimerWheel timerWheel;
+
+    @PostConstruct
+    public void init() {
+        serializer = new ByteCountingRedisSerializer(redisSerializer);
+        timerWheel = new TimerWheel(wheelSlots, tickMillis, this::expireIfUnchanged);
+    }
+
+    @Override
+    public void destroy() {
+        timerWheel.stop();
+    }
+
+    @Override
+    public void set(String key, Object value, long time) {
+        Entry entry = newEntry(Type.STRING, toBuffer(value), time);
+        store.put(key, entry);
+        if (entry.expireAt > 0) {
+            timerWheel.schedule(key, entry.expireAt);
+        }
+    }
+
+    @Override
+    public void set(String key, Object value) {
+        store.put(key, new Entry(Type.STRING, toBuffer(value)));
+    }
+
+    @Override
+    public Object get(String key) {
+        ByteBuffer buffer = read(key, Type.STRING, entry -> (ByteBuffer) entry.data);
+        return buffer == null ? null : toObject(buffer);
+    }
+
+    @Override
+    public List<Object> mGet(List<String> keys) {
+        List<Object> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Entry entry = getLive(key);
+            values.add(entry != null && entry.type == Type.STRING ? toObject((ByteBuffer) entry.data) : null);
+        }
+        return values;
+    }
+
+    @Override
+    public void mSet(Map<String, Object> map, long time) {
+        map.forEach((key, value) -> set(key, value, time));
+    }
+
+    @Override
+    public void mSet(Map<String, Object> map) {
+        map.forEach(this::set);
+    }
+
+    @Override
+    public Boolean del(String key) {
+        return store.remove(key) != null;
+    }
+
+    @Override
+    public Long del(List<String> keys) {
+        return keys.stream().filter(this::del).count();
+    }
+
+    /**
+     * 除了本服务保存的数据，@Cacheable的缓存也保存在进程内的缓存管理器中，按与Redis相同的完整key一起匹配删除
+     */
+    @Override
+    public Long delByPattern(String pattern) {
+        Pattern regex = globToRegex(pattern);
+        long count = store.keySet().stream().filter(key -> regex.matcher(key).matches()).filter(this::del).count();
+        if (localCacheManager != null) {
+            count += localCacheManager.evictIf(key -> regex.matcher(key).matches());
+        }
+        return count;
+    }
+
+    @Override
+    public Boolean expire(String key, long time) {
+        boolean[] exists = new boolean[1];
+        store.computeIfPresent(key, (k, entry) -> {
+            if (entry.isExpired()) {
+                return null;
+            }
+            exists[0] = true;
+            //与Redis一致，过期时间不大于0时直接删除
+            if (time <= 0) {
+                return null;
+            }
+            entry.expireAt = System.currentTimeMillis() + time * 1000;
+            timerWheel.schedule(key, entry.expireAt);
+            return entry;
+        });
+        return exists[0];
+    }
+
+    @Override
+    public Long getExpire(String key) {
+        Entry entry = getLive(key);
+        if (entry == null) {
+            return -2L;
+        }
+        long expireAt = entry.expireAt;
+        if (expireAt == 0) {
+            return -1L;
+        }
+        //与Redis的TTL命令一致，剩余毫秒数四舍五入为秒
+        return (Math.max(0, expireAt - System.currentTimeMillis()) + 500) / 1000;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        return getLive(key) != null;
+    }
+
+    @Override
+    public Long incr(String key, long delta) {
+        long[] result = new long[1];
+        store.compute(key, (k, entry) -> {
+            entry = live(entry);
+            if (entry == null) {
+                entry = new Entry(Type.STRING, null);
+            } else {
+                checkType(entry, Type.STRING);
+            }
+            result[0] = toLong(entry.data) + delta;
+            entry.data = toBuffer(result[0]);
+            return entry;
+        });
+        return result[0];
+    }
+
+    @Override
+    public Long decr(String key, long delta) {
+        return incr(key, -delta);
+    }
+
+    /**
+     * 进程内没有网络往返，直接递增
+     */
+    @Override
+    public void bufferedIncr(String key, long delta) {
+        incr(key, delta);
+    }
+
+    @Override
+    public Object hGet(String key, String hashKey) {
+        ByteBuffer buffer = read(key, Type.HASH, entry -> hash(entry).get(hashKey));
+        return buffer == null ? null : toObject(buffer);
+    }
+
+    @Override
+    public Boolean hSet(String key, String hashKey, Object value, long time) {
+        hSetAll(key, Collections.singletonMap(hashKey, value), time);
+        return true;
+    }
+
+    @Override
+    public void hSet(String key, String hashKey, Object value) {
+        hSetAll(key, Collections.singletonMap(hashKey, value));
+    }
+
+    @Override
+    public List<Object> hMGet(String key, Collection<String> hashKeys) {
+        List<ByteBuffer> buffers = read(key, Type.HASH, entry -> hashKeys.stream().map(hash(entry)::get).collect(Collectors.toList()));
+        List<Object> values = new ArrayList<>(hashKeys.size());
+        for (int i = 0; i < hashKeys.size(); i++) {
+            ByteBuffer buffer = buffers == null ? null : buffers.get(i);
+            values.add(buffer == null ? null : toObject(buffer));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<Object, Object> hGetAll(String key) {
+        Map<String, ByteBuffer> buffers = read(key, Type.HASH, entry -> new LinkedHashMap<>(hash(entry)));
+        Map<Object, Object> map = new LinkedHashMap<>();
+        if (buffers != null) {
+            buffers.forEach((hashKey, buffer) -> map.put(hashKey, toObject(buffer)));
+        }
+        return map;
+    }
+
+    @Override
+    public List<Map<Object, Object>> mHGetAll(List<String> keys) {
+        return keys.stream().map(this::hGetAll).collect(Collectors.toList());
+    }
+
+    @Override
+    public Stream<Map.Entry<Object, Object>> hStream(String key) {
+        return hGetAll(key).entrySet().stream();
+    }
+
+    @Override
+    public Boolean hSetAll(String key, Map<String, Object> map, long time) {
+        Map<String, ByteBuffer> buffers = toBuffers(map);
+        writeCollection(key, Type.HASH, LinkedHashMap::new, entry -> hash(entry).putAll(buffers), time);
+        return true;
+    }
+
+    @Override
+    public void hSetAll(String key, Map<String, Object> map) {
+        Map<String, ByteBuffer> buffers = toBuffers(map);
+        writeCollection(key, Type.HASH, LinkedHashMap::new, entry -> hash(entry).putAll(buffers), -1);
+    }
+
+    @Override
+    public void hDel(String key, Object... hashKey) {
+        modifyCollection(key, Type.HASH, entry -> {
+            for (Object field : hashKey) {
+                hash(entry).remove(String.valueOf(field));
+            }
+            return null;
+        }, null);
+    }
+
+    @Override
+    public Boolean hHasKey(String key, String hashKey) {
+        return Boolean.TRUE.equals(read(key, Type.HASH, entry -> hash(entry).containsKey(hashKey)));
+    }
+
+    @Override
+    public Long hIncr(String key, String hashKey, Long delta) {
+        long[] result = new long[1];
+        writeCollection(key, Type.HASH, LinkedHashMap::new, entry -> {
+            Map<String, ByteBuffer> hash = hash(entry);
+            result[0] = toLong(hash.get(hashKey)) + delta;
+            hash.put(hashKey, toBuffer(result[0]));
+        }, -1);
+        return result[0];
+    }
+
+    @Override
+    public Long hDecr(String key, String hashKey, Long delta) {
+        return hIncr(key, hashKey, -delta);
+    }
+
+    @Override
+    public void bufferedHIncr(String key, String hashKey, long delta) {
+        hIncr(key, hashKey, delta);
+    }
+
+    @Override
+    public Set<Object> sMembers(String key) {
+        List<ByteBuffer> buffers = read(key, Type.SET, entry -> new ArrayList<>(set(entry)));
+        Set<Object> members = new LinkedHashSet<>();
+        if (buffers != null) {
+            buffers.forEach(buffer -> members.add(toObject(buffer)));
+        }
+        return members;
+    }
+
+    @Override
+    public Stream<Object> sStream(String key) {
+        return sMembers(key).stream();
+    }
+
+    @Override
+    public Long sAdd(String key, Object... values) {
+        return sAdd(key, -1, values);
+    }
+
+    @Override
+    public Long sAdd(String key, long time, Object... values) {
+        long[] count = new long[1];
+        writeCollection(key, Type.SET, LinkedHashSet::new, entry -> {
+            for (Object value : values) {
+                if (set(entry).add(toBuffer(value))) {
+                    count[0]++;
+                }
+            }
+        }, time);
+        return count[0];
+    }
+
+    @Override
+    public Boolean sIsMember(String key, Object value) {
+        ByteBuffer buffer = toBuffer(value);
+        return Boolean.TRUE.equals(read(key, Type.SET, entry -> set(entry).contains(buffer)));
+    }
+
+    @Override
+    public Long sSize(String key) {
+        Integer size = read(key, Type.SET, entry -> set(entry).size());
+        return size == null ? 0L : size;
+    }
+
+    @Override
+    public Long sRemove(String key, Object... values) {
+        return modifyCollection(key, Type.SET, entry -> {
+            long count = 0;
+            for (Object value : values) {
+                if (set(entry).remove(toBuffer(value))) {
+                    count++;
+                }
+            }
+            return count;
+        }, 0L);
+    }
+
+    @Override
+    public List<Object> lRange(String key, long start, long end) {
+        List<ByteBuffer> buffers = read(key, Type.LIST, entry -> {
+            List<ByteBuffer> list = list(entry);
+            //与Redis一致，负数表示从尾部开始的索引，超出范围时自动截断
+            long from = Math.max(0, start < 0 ? list.size() + start : start);
+            long to = Math.min(list.size() - 1, end < 0 ? list.size() + end : end);
+            return from > to ? Collections.<ByteBuffer>emptyList() : new ArrayList<>(list.subList((int) from, (int) to + 1));
+        });
+        List<Object> values = new ArrayList<>();
+        if (buffers != null) {
+            buffers.forEach(buffer -> values.add(toObject(buffer)));
+        }
+        return values;
+    }
+
+    @Override
+    public Stream<Object> lStream(String key) {
+        return lRange(key, 0, -1).stream();
+    }
+
+    @Override
+    public Long lSize(String key) {
+        Integer size = read(key, Type.LIST, entry -> list(entry).size());
+        return size == null ? 0L : size;
+    }
+
+    @Override
+    public Object lIndex(String key, long index) {
+        ByteBuffer buffer = read(key, Type.LIST, entry -> {
+            List<ByteBuffer> list = list(entry);
+            long i = index < 0 ? list.size() + index : index;
+            return i < 0 || i >= list.size() ? null : list.get((int) i);
+        });
+        return buffer == null ? null : toObject(buffer);
+    }
+
+    @Override
+    public Long lPush(String key, Object value) {
+        return lPushAll(key, -1L, value);
+    }
+
+    @Override
+    public Long lPush(String key, Object value, long time) {
+        return lPushAll(key, time, value);
+    }
+
+    @Override
+    public Long lPushAll(String key, Object... values) {
+        return lPushAll(key, -1L, values);
+    }
+
+    @Override
+    public Long lPushAll(String key, Long time, Object... values) {
+        long[] size = new long[1];
+        writeCollection(key, Type.LIST, ArrayList::new, entry -> {
+            List<ByteBuffer> list = list(entry);
+            for (Object value : values) {
+                list.add(toBuffer(value));
+            }
+            size[0] = list.size();
+        }, time);
+        return size[0];
+    }
+
+    @Override
+    public Long lRemove(String key, long count, Object value) {
+        ByteBuffer buffer = toBuffer(value);
+        return modifyCollection(key, Type.LIST, entry -> {
+            List<ByteBuffer> list = list(entry);
+            long removed = 0;
+            //count大于0从头部开始删除，小于0从尾部开始删除，等于0删除全部
+            if (count >= 0) {
+                for (int i = 0; i < list.size() && (count == 0 || removed < count); ) {
+                    if (list.get(i).equals(buffer)) {
+                        list.remove(i);
+                        removed++;
+                    } else {
+                        i++;
+                    }
+                }
+            } else {
+                for (int i = list.size() - 1; i >= 0 && removed < -count; i--) {
+                    if (list.get(i).equals(buffer)) {
+                        list.remove(i);
+                        removed++;
+                    }
+                }
+            }
+            return removed;
+        }, 0L);
+    }
+
+    /**
+     * 时间轮到期回调，key在此期间被重新设置过期时间或被覆盖时不删除
+     */
+    private void expireIfUnchanged(String key, Long expireAt) {
+        store.computeIfPresent(key, (k, entry) -> entry.expireAt == expireAt ? null : entry);
+    }
+
+    private Entry newEntry(Type type, Object data, long time) {
+        Entry entry = new Entry(type, data);
+        if (time > 0) {
+            entry.expireAt = System.currentTimeMillis() + time * 1000;
+        }
+        return entry;
+    }
+
+    private Entry getLive(String key) {
+        Entry entry = store.get(key);
+        if (entry != null && entry.isExpired()) {
+            store.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private Entry live(Entry entry) {
+        return entry == null || entry.isExpired() ? null : entry;
+    }
+
+    /**
+     * 在key的锁内读取，key不存在时返回null
+     */
+    private <T> T read(String key, Type type, Function<Entry, T> reader) {
+        Object[] result = new Object[1];
+        store.computeIfPresent(key, (k, entry) -> {
+            entry = live(entry);
+            if (entry != null) {
+                checkType(entry, type);
+                result[0] = reader.apply(entry);
+            }
+            return entry;
+        });
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    /**
+     * 写入集合类型，key不存在时创建，time大于0时同时设置过期时间
+     */
+    private void writeCollection(String key, Type type, Supplier<Object> creator,
+                                 Consumer<Entry> writer, long time) {
+        store.compute(key, (k, entry) -> {
+            entry = live(entry);
+            if (entry == null) {
+                entry = new Entry(type, creator.get());
+            } else {
+                checkType(entry, type);
+            }
+            writer.accept(entry);
+            if (time > 0) {
+                entry.expireAt = System.currentTimeMillis() + time * 1000;
+            }
+            return entry;
+        });
+        scheduleIfNecessary(key);
+    }
+
+    /**
+     * 修改已存在的集合，修改后集合为空时删除key，key不存在时返回defaultValue
+     */
+    private <T> T modifyCollection(String key, Type type, Function<Entry, T> modifier, T defaultValue) {
+        Object[] result = {defaultValue};
+        store.computeIfPresent(key, (k, entry) -> {
+            entry = live(entry);
+            if (entry == null) {
+                return null;
+            }
+            checkType(entry, type);
+            result[0] = modifier.apply(entry);
+            return isEmpty(entry) ? null : entry;
+        });
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    private void scheduleIfNecessary(String key) {
+        Entry entry = store.get(key);
+        if (entry != null && entry.expireAt > 0) {
+            timerWheel.schedule(key, entry.expireAt);
+        }
+    }
+
+    private static boolean isEmpty(Entry entry) {
+        return switch (entry.type) {
+            case HASH -> hash(entry).isEmpty();
+            case SET -> set(entry).isEmpty();
+            case LIST -> list(entry).isEmpty();
+            default -> false;
+        };
+    }
+
+    private static void checkType(Entry entry, Type type) {
+        if (entry.type != type) {
+            throw new InvalidDataAccessApiUsageException(WRONG_TYPE);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ByteBuffer> hash(Entry entry) {
+        return (Map<String, ByteBuffer>) entry.data;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<ByteBuffer> set(Entry entry) {
+        return (Set<ByteBuffer>) entry.data;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<ByteBuffer> list(Entry entry) {
+        return (List<ByteBuffer>) entry.data;
+    }
+
+    private long toLong(Object data) {
+        if (data == null) {
+            return 0;
+        }
+        if (toObject((ByteBuffer) data) instanceof Number number) {
+            return number.longValue();
+        }
+        throw new InvalidDataAccessApiUsageException("ERR value is not an integer or out of range");
+    }
+
+    private Map<String, ByteBuffer> toBuffers(Map<String, Object> map) {
+        Map<String, ByteBuffer> buffers = new LinkedHashMap<>(map.size());
+        map.forEach((hashKey, value) -> buffers.put(hashKey, toBuffer(value)));
+        return buffers;
+    }
+
+    /**
+     * 序列化后复制到堆外内存，ByteBuffer按内容比较，可以直接作为Set元素
+     * 每次写入都分配新的堆外内存，旧值的内存在GC后才释放，容量限制见类注释
+     */
+    private ByteBuffer toBuffer(Object value) {
+        byte[] bytes = serializer.serialize(value);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    private Object toObject(ByteBuffer buffer) {
+        ByteBuffer duplicate = buffer.duplicate();
+        byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get(bytes);
+        return serializer.deserialize(bytes);
+    }
+
+    /**
+     * 把Redis的glob模式转换为正则表达式，支持*、?、[]和\转义
+     */
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inBracket = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(escape(glob.charAt(++i)));
+            } else if (inBracket) {
+                if (c == ']') {
+                    inBracket = false;
+                    regex.append(']');
+                } else if (c == '^' && glob.charAt(i - 1) == '[') {
+                    regex.append('^');
+                } else if (c == '-') {
+                    regex.append('-');
+                } else {
+                    regex.append(escape(c));
+                }
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[') {
+                inBracket = true;
+                regex.append('[');
+            } else {
+                regex.append(escape(c));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static String escape(char c) {
+        return Character.isLetterOrDigit(c) ? String.valueOf(c) : "\\" + c;
+    }
+
+    private enum Type {
+        STRING, HASH, SET, LIST
+    }
+
+    private static final class Entry {
+        private final Type type;
+        private volatile Object data;
+        //到期时间戳（毫秒），0表示不过期
+        private volatile long expireAt;
+
+        private Entry(Type type, Object data) {
+            this.type = type;
+            this.data = data;
+        }
+
+        private boolean isExpired() {
+            long expire = expireAt;
+            return expire > 0 && expire <= System.currentTimeMillis();
+        }
+    }
+}
@@ -1,17 +1,36 @@
 package com.lzy.mall.tiny.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
+import com.lzy.mall.tiny.common.api.CommonPage;
+import com.lzy.mall.tiny.component.BloomFilter;
+import com.lzy.mall.tiny.component.NearCache;
+import com.lzy.mall.tiny.component.RedisCacheBatchSupport;
 import com.lzy.mall.tiny.config.RedisConfig;
 import com.lzy.mall.tiny.mbg.mapper.PmsBrandMapper;
 import com.lzy.mall.tiny.mbg.model.PmsBrand;
 import com.lzy.mall.tiny.mbg.model.PmsBrandExample;
 import com.lzy.mall.tiny.service.PmsBrandService;
+import com.lzy.mall.tiny.service.RedisService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @auther macrozheng
@@ -21,43 +40,303 @@ import java.util.List;
  */
 @Service
 public class PmsBrandServiceImpl implements PmsBrandService {
+    /**
+     * 不存在品牌的空值缓存key前缀
+     */
+    public static final String NULL_KEY_PREFIX = RedisConfig.REDIS_KEY_DATABASE + ":null:pms:brand:";
+    /**
+     * 品牌列表缓存的版本号key和列表缓存key前缀
+     */
+    public static final String LIST_VERSION_KEY = RedisConfig.REDIS_KEY_DATABASE + ":pms:brand:list:version";
+    private static final String LIST_KEY_PREFIX = RedisConfig.REDIS_KEY_DATABASE + ":pms:brand:list:";
+    /**
+     * 品牌详情在Spring Cache中的key前缀，与@Cacheable中的key保持一致
+     */
+    public static final String BRAND_CACHE_KEY_PREFIX = "pms:brand:";
+    /**
+     * 按属性存储的品牌Hash缓存key前缀
+     */
+    public static final String HASH_KEY_PREFIX = RedisConfig.REDIS_KEY_DATABASE + ":pms:brand:hash:";
+    /**
+     * 品牌详情浏览量，Hash中的属性为品牌ID
+     */
+    private static final String VIEW_COUNT_KEY = RedisConfig.REDIS_KEY_DATABASE + ":pms:brand:view";
     @Autowired
     private PmsBrandMapper brandMapper;
+    @Autowired
+    private RedisService redisService;
+    @Autowired
+    private BloomFilter brandBloomFilter;
+    @Autowired
+    private RedisCacheBatchSupport redisCacheBatchSupport;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Value("${redis.cache.null-ttl:60}")
+    private Long nullTtl;
+    @Value("${redis.cache.list-ttl:3600}")
+    private Long listTtl;
+    @Value("${redis.cache.hash-ttl:3600}")
+    private Long hashTtl;
 
     @Override
     public int create(PmsBrand brand) {
-        return brandMapper.insertSelective(brand);
+        int count = brandMapper.insertSelective(brand);
+        if (count > 0) {
+            brandBloomFilter.add(brand.getId());
+            redisService.del(NULL_KEY_PREFIX + brand.getId());
+            increaseListVersion();
+        }
+        return count;
     }
 
     @CacheEvict(value = RedisConfig.REDIS_KEY_DATABASE, key = "'pms:brand:'+#id")
     @Override
     public int update(Long id, PmsBrand brand) {
         brand.setId(id);
-        return brandMapper.updateByPrimaryKeySelective(brand);
+        int count = brandMapper.updateByPrimaryKeySelective(brand);
+        if (count > 0) {
+            //不按属性HSET修改的字段，直接删除Hash缓存，下次读取时整体回填
+            //与按属性写入一样，并发读取回填的旧数据可能覆盖本次删除，由发件箱转发任务在修改提交后再删除一次
+            redisService.del(HASH_KEY_PREFIX + id);
+            increaseListVersion();
+        }
+        return count;
     }
 
     @CacheEvict(value = RedisConfig.REDIS_KEY_DATABASE, key = "'pms:brand:'+#id")
     @Override
     public int delete(Long id) {
-        return brandMapper.deleteByPrimaryKey(id);
+        int count = brandMapper.deleteByPrimaryKey(id);
+        if (count > 0) {
+            //布隆过滤器无法删除元素，用空值缓存拦截已删除的ID
+            redisService.set(NULL_KEY_PREFIX + id, id, nullTtl);
+            redisService.del(HASH_KEY_PREFIX + id);
+            increaseListVersion();
+        }
+        return count;
     }
 
-    @Cacheable(value = RedisConfig.REDIS_KEY_DATABASE, key = "'pms:brand:'+#id", unless = "#result==null")
+    @Cacheable(value = RedisConfig.REDIS_KEY_DATABASE, key = "'pms:brand:'+#id", sync = true)
     @Override
     public PmsBrand getItem(Long id) {
-        return brandMapper.selectByPrimaryKey(id);
+        meterRegistry.counter("cache.penetration.checks", "cache", "pms:brand").increment();
+        //布隆过滤器判断不存在的ID一定不存在，直接返回
+        if (!brandBloomFilter.mightContain(id)) {
+            meterRegistry.counter("cache.penetration.rejected", "cache", "pms:brand", "reason", "bloom").increment();
+            return null;
+        }
+        if (Boolean.TRUE.equals(redisService.hasKey(NULL_KEY_PREFIX + id))) {
+            meterRegistry.counter("cache.penetration.rejected", "cache", "pms:brand", "reason", "null").increment();
+            return null;
+        }
+        PmsBrand brand = brandMapper.selectByPrimaryKey(id);
+        if (brand == null) {
+            redisService.set(NULL_KEY_PREFIX + id, id, nullTtl);
+        }
+        return brand;
     }
 
     @Override
+    public List<PmsBrand> getItems(Collection<Long> ids) {
+        Map<Long, PmsBrand> brandMap = new HashMap<>(ids.size());
+        NearCache nearCache = getNearCache();
+        //先读取进程内缓存，与getItem共用同一份L1
+        List<Long> remoteIds = new ArrayList<>();
+        for (Long id : ids.stream().distinct().collect(Collectors.toList())) {
+            Cache.ValueWrapper local = nearCache != null ? nearCache.getLocal(BRAND_CACHE_KEY_PREFIX + id) : null;
+            if (local != null && local.get() instanceof PmsBrand brand) {
+                brandMap.put(id, brand);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        List<Long> missIds = filterPenetration(remoteIds);
+        if (!missIds.isEmpty()) {
+            //一次MGET读取L1未命中的品牌缓存
+            List<String> cacheKeys = missIds.stream().map(id -> BRAND_CACHE_KEY_PREFIX + id).collect(Collectors.toList());
+            List<Object> cachedList = redisCacheBatchSupport.multiGet(RedisConfig.REDIS_KEY_DATABASE, cacheKeys);
+            List<Long> loadIds = new ArrayList<>();
+            for (int i = 0; i < missIds.size(); i++) {
+                if (cachedList.get(i) instanceof PmsBrand brand) {
+                    brandMap.put(missIds.get(i), brand);
+                    putNearCache(nearCache, brand);
+                } else {
+                    loadIds.add(missIds.get(i));
+                }
+            }
+            loadItems(loadIds, brandMap, nearCache);
+        }
+        return ids.stream().map(brandMap::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * 与getItem相同的防穿透处理：过滤掉布隆过滤器判断不存在和有空值缓存的ID，各一次网络往返
+     */
+    private List<Long> filterPenetration(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        meterRegistry.counter("cache.penetration.checks", "cache", "pms:brand").increment(ids.size());
+        List<Boolean> mightContain = brandBloomFilter.mightContainAll(ids);
+        List<Long> bloomIds = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            if (mightContain.get(i)) {
+                bloomIds.add(ids.get(i));
+            }
+        }
+        meterRegistry.counter("cache.penetration.rejected", "cache", "pms:brand", "reason", "bloom")
+                .increment(ids.size() - bloomIds.size());
+        if (bloomIds.isEmpty()) {
+            return bloomIds;
+        }
+        List<Object> nullMarkers = redisService.mGet(bloomIds.stream().map(id -> NULL_KEY_PREFIX + id).collect(Collectors.toList()));
+        List<Long> result = new ArrayList<>(bloomIds.size());
+        for (int i = 0; i < bloomIds.size(); i++) {
+            if (nullMarkers == null || nullMarkers.get(i) == null) {
+                result.add(bloomIds.get(i));
+            }
+        }
+        meterRegistry.counter("cache.penetration.rejected", "cache", "pms:brand", "reason", "null")
+                .increment(bloomIds.size() - result.size());
+        return result;
+    }
+
+    /**
+     * 缓存未命中的品牌通过一次IN查询加载，再通过管道一次写回缓存，数据库中不存在的ID写入空值缓存
+     */
+    private void loadItems(List<Long> ids, Map<Long, PmsBrand> brandMap, NearCache nearCache) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        PmsBrandExample example = new PmsBrandExample();
+        example.createCriteria().andIdIn(ids);
+        Map<String, PmsBrand> entries = new LinkedHashMap<>();
+        for (PmsBrand brand : brandMapper.selectByExampleWithBLOBs(example)) {
+            brandMap.put(brand.getId(), brand);
+            entries.put(BRAND_CACHE_KEY_PREFIX + brand.getId(), brand);
+        }
+        //只回填不存在的缓存，已存在的可能是读取数据库之后修改的新数据；没有写入的不放进进程内缓存
+        Set<String> written = redisCacheBatchSupport.multiPutIfAbsent(RedisConfig.REDIS_KEY_DATABASE, entries);
+        entries.forEach((cacheKey, brand) -> {
+            if (written.contains(cacheKey)) {
+                putNearCache(nearCache, brand);
+            }
+        });
+        Map<String, Object> nullEntries = new LinkedHashMap<>();
+        ids.stream().filter(id -> !brandMap.containsKey(id)).forEach(id -> nullEntries.put(NULL_KEY_PREFIX + id, id));
+        if (!nullEntries.isEmpty()) {
+            redisService.mSet(nullEntries, nullTtl);
+        }
+    }
+
+    /**
+     * 开启进程内二级缓存时返回品牌详情所在的缓存
+     */
+    private NearCache getNearCache() {
+        Cache cache = cacheManager.getCache(RedisConfig.REDIS_KEY_DATABASE);
+        return cache instanceof NearCache nearCache ? nearCache : null;
+    }
+
+    private void putNearCache(NearCache nearCache, PmsBrand brand) {
+        if (nearCache != null) {
+            nearCache.putLocal(BRAND_CACHE_KEY_PREFIX + brand.getId(), brand);
+        }
+    }
+
+    @Override
+    public PmsBrand getItemFields(Long id, Collection<String> fields) {
+        meterRegistry.counter("cache.penetration.checks", "cache", "pms:brand").increment();
+        //与getItem相同的防穿透处理
+        if (!brandBloomFilter.mightContain(id)) {
+            meterRegistry.counter("cache.penetration.rejected", "cache", "pms:brand", "reason", "bloom").increment();
+            return null;
+        }
+        String key = HASH_KEY_PREFIX + id;
+        List<String> fieldList = new ArrayList<>(fields);
+        //HMGET只读取需要的属性，不传输品牌故事等大字段
+        List<Object> values = redisService.hMGet(key, fieldList);
+        Map<String, Object> fieldMap = new HashMap<>(fieldList.size());
+        for (int i = 0; i < fieldList.size(); i++) {
+            if (values.get(i) != null) {
+                fieldMap.put(fieldList.get(i), values.get(i));
+            }
+        }
+        if (fieldMap.isEmpty() && !Boolean.TRUE.equals(redisService.hasKey(key))) {
+            //已删除的ID仍能通过布隆过滤器，由空值缓存拦截
+            if (Boolean.TRUE.equals(redisService.hasKey(NULL_KEY_PREFIX + id))) {
+                meterRegistry.counter("cache.penetration.rejected", "cache", "pms:brand", "reason", "null").increment();
+                return null;
+            }
+            PmsBrand brand = brandMapper.selectByPrimaryKey(id);
+            if (brand == null) {
+                redisService.set(NULL_KEY_PREFIX + id, id, nullTtl);
+                return null;
+            }
+            //为空的属性不写入Hash，读取时同样为空
+            Map<String, Object> brandMap = BeanUtil.beanToMap(brand, false, true);
+            redisService.hSetAll(key, brandMap, hashTtl);
+            fieldList.stream().filter(brandMap::containsKey).forEach(field -> fieldMap.put(field, brandMap.get(field)));
+        }
+        return BeanUtil.toBean(fieldMap, PmsBrand.class);
+    }
+
+    @Override
+    public void increaseViewCount(Long id) {
+        //每次访问详情都会计数，逐次HINCRBY的写入量与访问量相同，改为本地累加后批量写入
+        redisService.bufferedHIncr(VIEW_COUNT_KEY, String.valueOf(id), 1);
+    }
+
+    @Override
+    public Long getViewCount(Long id) {
+        Object count = redisService.hGet(VIEW_COUNT_KEY, String.valueOf(id));
+        return count instanceof Number number ? number.longValue() : 0L;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
     public List<PmsBrand> list(Integer pageNum, Integer pageSize) {
+        String key = LIST_KEY_PREFIX + getListVersion() + ":" + pageNum + ":" + pageSize;
+        CommonPage<PmsBrand> cachePage = (CommonPage<PmsBrand>) redisService.get(key);
+        if (cachePage != null) {
+            //还原成分页对象，保证返回结果中的总数、页数与查询数据库时一致
+            Page<PmsBrand> page = new Page<>(cachePage.getPageNum(), cachePage.getPageSize());
+            page.setTotal(cachePage.getTotal());
+            page.addAll(cachePage.getList());
+            return page;
+        }
         PageHelper.startPage(pageNum, pageSize);
-        return brandMapper.selectByExample(new PmsBrandExample());
+        List<PmsBrand> brandList = brandMapper.selectByExample(new PmsBrandExample());
+        CommonPage<PmsBrand> commonPage = CommonPage.restPage(brandList);
+        commonPage.setList(new ArrayList<>(brandList));
+        redisService.set(key, commonPage, listTtl);
+        return brandList;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public List<PmsBrand> ListAll() {
-        return brandMapper.selectByExample(new PmsBrandExample());
+        String key = LIST_KEY_PREFIX + getListVersion() + ":all";
+        List<PmsBrand> brandList = (List<PmsBrand>) redisService.get(key);
+        if (brandList == null) {
+            brandList = brandMapper.selectByExample(new PmsBrandExample());
+            redisService.set(key, brandList, listTtl);
+        }
+        return brandList;
     }
 
+    /**
+     * 品牌列表缓存的版本号，版本号变化后旧版本的列表缓存不再被访问，过期后自动删除
+     */
+    private Long getListVersion() {
+        return redisService.incr(LIST_VERSION_KEY, 0);
+    }
 
+    /**
+     * 品牌数据变更后递增版本号，一次操作让所有列表缓存失效
+     */
+    private void increaseListVersion() {
+        redisService.incr(LIST_VERSION_KEY, 1);
+    }
 }
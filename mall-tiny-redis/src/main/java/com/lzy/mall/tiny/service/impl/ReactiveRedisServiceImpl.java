@@ -0,0 +1,137 @@
+package com.lzy.mall.tiny.service.impl;
+
+import com.lzy.mall.tiny.component.HotKeyDetector;
+import com.lzy.mall.tiny.component.TrackingRedisCache;
+import com.lzy.mall.tiny.service.ReactiveRedisService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于ReactiveRedisTemplate的实现，等待Redis响应期间不占用线程
+ * 与阻塞方式共用热点key和客户端缓存的进程内副本，修改key前后同样需要清除
+ */
+@Service
+public class ReactiveRedisServiceImpl implements ReactiveRedisService {
+    @Autowired
+    private ReactiveRedisTemplate<String, Object> reactiveRedisTemplate;
+    @Autowired
+    private HotKeyDetector hotKeyDetector;
+    @Autowired(required = false)
+    private TrackingRedisCache trackingRedisCache;
+
+    @Override
+    public Mono<Boolean> set(String key, Object value, long time) {
+        return write(reactiveRedisTemplate.opsForValue().set(key, value, Duration.ofSeconds(time)), key);
+    }
+
+    @Override
+    public Mono<Boolean> set(String key, Object value) {
+        return write(reactiveRedisTemplate.opsForValue().set(key, value), key);
+    }
+
+    @Override
+    public Mono<Object> get(String key) {
+        return reactiveRedisTemplate.opsForValue().get(key);
+    }
+
+    @Override
+    public Mono<List<Object>> mGet(List<String> keys) {
+        return reactiveRedisTemplate.opsForValue().multiGet(keys);
+    }
+
+    @Override
+    public Mono<Long> del(String... keys) {
+        return write(reactiveRedisTemplate.delete(keys), keys);
+    }
+
+    @Override
+    public Mono<Boolean> expire(String key, long time) {
+        return reactiveRedisTemplate.expire(key, Duration.ofSeconds(time));
+    }
+
+    @Override
+    public Mono<Boolean> hasKey(String key) {
+        return reactiveRedisTemplate.hasKey(key);
+    }
+
+    @Override
+    public Mono<Long> incr(String key, long delta) {
+        return write(reactiveRedisTemplate.opsForValue().increment(key, delta), key);
+    }
+
+    @Override
+    public Mono<Object> hGet(String key, String hashKey) {
+        return reactiveRedisTemplate.opsForHash().get(key, hashKey);
+    }
+
+    @Override
+    public Mono<Boolean> hSet(String key, String hashKey, Object value) {
+        return write(reactiveRedisTemplate.opsForHash().put(key, hashKey, value), key);
+    }
+
+    @Override
+    public Mono<Map<Object, Object>> hGetAll(String key) {
+        return reactiveRedisTemplate.opsForHash().entries(key).collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    @Override
+    public Mono<Boolean> hSetAll(String key, Map<String, Object> map) {
+        return write(reactiveRedisTemplate.opsForHash().putAll(key, map), key);
+    }
+
+    @Override
+    public Flux<Object> sMembers(String key) {
+        return reactiveRedisTemplate.opsForSet().members(key);
+    }
+
+    @Override
+    public Mono<Long> sAdd(String key, Object... values) {
+        return reactiveRedisTemplate.opsForSet().add(key, values);
+    }
+
+    @Override
+    public Mono<Long> sRemove(String key, Object... values) {
+        return reactiveRedisTemplate.opsForSet().remove(key, values);
+    }
+
+    @Override
+    public Flux<Object> lRange(String key, long start, long end) {
+        return reactiveRedisTemplate.opsForList().range(key, start, end);
+    }
+
+    @Override
+    public Mono<Long> lPushAll(String key, Object... values) {
+        return reactiveRedisTemplate.opsForList().rightPushAll(key, values);
+    }
+
+    @Override
+    public Mono<Long> lRemove(String key, long count, Object value) {
+        return reactiveRedisTemplate.opsForList().remove(key, count, value);
+    }
+
+    /**
+     * 执行修改key的操作，订阅时和操作结束后都清除本节点的进程内缓存
+     */
+    private <T> Mono<T> write(Mono<T> operation, String... keys) {
+        return Mono.fromRunnable(() -> invalidateLocal(keys))
+                .then(operation)
+                .doFinally(signal -> invalidateLocal(keys));
+    }
+
+    private void invalidateLocal(String... keys) {
+        Arrays.stream(keys).forEach(key -> {
+            hotKeyDetector.invalidate(key);
+            if (trackingRedisCache != null) {
+                trackingRedisCache.invalidate(key);
+            }
+        });
+    }
+}
@@ -1,43 +1,169 @@
 package com.lzy.mall.tiny.service.impl;
 
+import com.lzy.mall.tiny.component.BufferedCounter;
+import com.lzy.mall.tiny.component.HotKeyDetector;
+import com.lzy.mall.tiny.component.NearCacheManager;
+import com.lzy.mall.tiny.component.TrackingRedisCache;
 import com.lzy.mall.tiny.service.RedisService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
+@Profile("!offheap")
 public class RedisServiceImpl implements RedisService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RedisServiceImpl.class);
+    /**
+     * 写入Hash属性并设置过期时间，ARGV[1]为过期时间，其后为hashKey和value交替排列
+     */
+    private static final RedisScript<Boolean> HSET_EXPIRE_SCRIPT = new DefaultRedisScript<>(
+            "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "return redis.call('EXPIRE', KEYS[1], ARGV[1])", Boolean.class);
+    /**
+     * 向Set中添加属性并设置过期时间，返回新增的数量
+     */
+    private static final RedisScript<Long> SADD_EXPIRE_SCRIPT = new DefaultRedisScript<>(
+            "local count = 0 " +
+            "for i = 2, #ARGV do count = count + redis.call('SADD', KEYS[1], ARGV[i]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) return count", Long.class);
+    /**
+     * 向List尾部添加属性并设置过期时间，返回List的长度
+     */
+    private static final RedisScript<Long> RPUSH_EXPIRE_SCRIPT = new DefaultRedisScript<>(
+            "local size = 0 " +
+            "for i = 2, #ARGV do size = redis.call('RPUSH', KEYS[1], ARGV[i]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) return size", Long.class);
+
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisSerializer<Object> redisSerializer;
+    @Autowired
+    private HotKeyDetector hotKeyDetector;
+    @Autowired(required = false)
+    private TrackingRedisCache trackingRedisCache;
+    @Autowired
+    private BufferedCounter bufferedCounter;
+    @Value("${redis.stream.page-size:1000}")
+    private Integer streamPageSize;
+    @Value("${redis.invalidate.scan-count:1000}")
+    private Integer invalidateScanCount;
+    @Value("${redis.invalidate.batch-size:500}")
+    private Integer invalidateBatchSize;
+    @Value("${redis.invalidate.max-rate:20000}")
+    private Integer invalidateMaxRate;
 
     @Override
     public void set(String key, Object value, long time) {
-        redisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS);
+        write(key, () -> redisTemplate.opsForValue().set(key, value, time, TimeUnit.SECONDS));
     }
 
     @Override
     public void set(String key, Object value) {
-        redisTemplate.opsForValue().set(key, value);
+        write(key, () -> redisTemplate.opsForValue().set(key, value));
     }
 
     @Override
     public Object get(String key) {
+        //开启客户端缓存时由服务端推送失效消息保证一致性，所有key都可以在本地缓存
+        if (trackingRedisCache != null) {
+            return trackingRedisCache.get(key);
+        }
+        //热点key优先从进程内缓存读取
+        if (hotKeyDetector.record(key)) {
+            return readHotKey(key, () -> redisTemplate.opsForValue().get(key));
+        }
         return redisTemplate.opsForValue().get(key);
     }
 
+    @Override
+    public List<Object> mGet(List<String> keys) {
+        return redisTemplate.opsForValue().multiGet(keys);
+    }
+
+    @Override
+    public void mSet(Map<String, Object> map, long time) {
+        //MSET不支持过期时间，使用管道把多条SET EX命令合并到一次网络往返中
+        write(map.keySet(), () -> redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                map.forEach((key, value) -> operations.opsForValue().set(key, value, time, TimeUnit.SECONDS));
+                return null;
+            }
+        }));
+    }
+
+    @Override
+    public void mSet(Map<String, Object> map) {
+        write(map.keySet(), () -> redisTemplate.opsForValue().multiSet(map));
+    }
+
     @Override
     public Boolean del(String key) {
-        return redisTemplate.delete(key);
+        return write(key, () -> redisTemplate.delete(key));
     }
 
     @Override
     public Long del(List<String> keys) {
-        return redisTemplate.delete(keys);
+        return write(keys, () -> redisTemplate.delete(keys));
+    }
+
+    @Override
+    public Long delByPattern(String pattern) {
+        long deleted = 0;
+        long start = System.nanoTime();
+        List<String> batch = new ArrayList<>(invalidateBatchSize);
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(invalidateScanCount).build();
+        //SCAN每次只遍历一小部分key，遍历期间删除不影响游标，保证遍历开始前已存在的key都会被返回
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= invalidateBatchSize) {
+                    deleted += unlinkBatch(batch);
+                    throttle(deleted, start);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleted += unlinkBatch(batch);
+        }
+        if (deleted > 0) {
+            publishClearAll();
+        }
+        return deleted;
     }
 
     @Override
@@ -57,49 +183,91 @@ public class RedisServiceImpl implements RedisService {
 
     @Override
     public Long incr(String key, long delta) {
-        return redisTemplate.opsForValue().increment(key, delta);
+        return write(key, () -> redisTemplate.opsForValue().increment(key, delta));
     }
 
     @Override
     public Long decr(String key, long delta) {
-        return redisTemplate.opsForValue().increment(key, -delta);
+        return write(key, () -> redisTemplate.opsForValue().increment(key, -delta));
+    }
+
+    @Override
+    public void bufferedIncr(String key, long delta) {
+        bufferedCounter.incr(key, delta);
     }
 
     @Override
     public Object hGet(String key, String hashKey) {
+        if (trackingRedisCache != null) {
+            return trackingRedisCache.hGet(key, hashKey);
+        }
         return redisTemplate.opsForHash().get(key, hashKey);
     }
 
     @Override
     public Boolean hSet(String key, String hashKey, Object value, long time) {
-        redisTemplate.opsForHash().put(key, hashKey, value);
-        return expire(key, time);
+        return write(key, () -> executeScript(HSET_EXPIRE_SCRIPT, key, time, serializeHashKey(hashKey), serializeHashValue(value)));
     }
 
     @Override
     public void hSet(String key, String hashKey, Object value) {
-        redisTemplate.opsForHash().put(key, hashKey, value);
+        write(key, () -> redisTemplate.opsForHash().put(key, hashKey, value));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Object> hMGet(String key, Collection<String> hashKeys) {
+        return redisTemplate.opsForHash().multiGet(key, (Collection<Object>) (Collection<?>) hashKeys);
     }
 
     @Override
     public Map<Object, Object> hGetAll(String key) {
+        if (trackingRedisCache != null) {
+            return trackingRedisCache.hGetAll(key);
+        }
+        if (hotKeyDetector.record(key)) {
+            @SuppressWarnings("unchecked")
+            Map<Object, Object> map = (Map<Object, Object>) readHotKey(key,
+                    () -> new LinkedHashMap<>(redisTemplate.opsForHash().entries(key)));
+            return map;
+        }
         return redisTemplate.opsForHash().entries(key);
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Map<Object, Object>> mHGetAll(List<String> keys) {
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                keys.forEach(key -> operations.opsForHash().entries(key));
+                return null;
+            }
+        });
+        List<Map<Object, Object>> mapList = new ArrayList<>(results.size());
+        results.forEach(result -> mapList.add((Map<Object, Object>) result));
+        return mapList;
+    }
+
+    @Override
+    public Stream<Map.Entry<Object, Object>> hStream(String key) {
+        //游标持有连接，关闭流时一并关闭游标
+        return redisTemplate.opsForHash().scan(key, ScanOptions.scanOptions().count(streamPageSize).build()).stream();
+    }
+
     @Override
     public Boolean hSetAll(String key, Map<String, Object> map, long time) {
-        redisTemplate.opsForHash().putAll(key, map);
-        return expire(key, time);
+        return write(key, () -> executeScript(HSET_EXPIRE_SCRIPT, key, time, serializeHashEntries(map)));
     }
 
     @Override
     public void hSetAll(String key, Map<String, Object> map) {
-        redisTemplate.opsForHash().putAll(key, map);
+        write(key, () -> redisTemplate.opsForHash().putAll(key, map));
     }
 
     @Override
     public void hDel(String key, Object... hashKey) {
-        redisTemplate.opsForHash().delete(key, hashKey);
+        write(key, () -> redisTemplate.opsForHash().delete(key, hashKey));
     }
 
     @Override
@@ -109,12 +277,17 @@ public class RedisServiceImpl implements RedisService {
 
     @Override
     public Long hIncr(String key, String hashKey, Long delta) {
-        return redisTemplate.opsForHash().increment(key, hashKey, delta);
+        return write(key, () -> redisTemplate.opsForHash().increment(key, hashKey, delta));
     }
 
     @Override
     public Long hDecr(String key, String hashKey, Long delta) {
-        return redisTemplate.opsForHash().increment(key, hashKey, -delta);
+        return write(key, () -> redisTemplate.opsForHash().increment(key, hashKey, -delta));
+    }
+
+    @Override
+    public void bufferedHIncr(String key, String hashKey, long delta) {
+        bufferedCounter.hIncr(key, hashKey, delta);
     }
 
     @Override
@@ -122,6 +295,11 @@ public class RedisServiceImpl implements RedisService {
         return redisTemplate.opsForSet().members(key);
     }
 
+    @Override
+    public Stream<Object> sStream(String key) {
+        return redisTemplate.opsForSet().scan(key, ScanOptions.scanOptions().count(streamPageSize).build()).stream();
+    }
+
     @Override
     public Long sAdd(String key, Object... values) {
         return redisTemplate.opsForSet().add(key, values);
@@ -129,9 +307,7 @@ public class RedisServiceImpl implements RedisService {
 
     @Override
     public Long sAdd(String key, long time, Object... values) {
-        Long count = redisTemplate.opsForSet().add(key, values);
-        expire(key, time);
-        return count;
+        return executeScript(SADD_EXPIRE_SCRIPT, key, time, serializeValues(values));
     }
 
     @Override
@@ -154,6 +330,42 @@ public class RedisServiceImpl implements RedisService {
         return redisTemplate.opsForList().range(key, start, end);
     }
 
+    @Override
+    public Stream<Object> lStream(String key) {
+        //每次只读取一页，上一页处理完后才读取下一页
+        Iterator<Object> iterator = new Iterator<Object>() {
+            private List<Object> page = Collections.emptyList();
+            private int index;
+            private long offset;
+            private boolean last;
+
+            @Override
+            public boolean hasNext() {
+                if (index < page.size()) {
+                    return true;
+                }
+                if (last) {
+                    return false;
+                }
+                List<Object> next = redisTemplate.opsForList().range(key, offset, offset + streamPageSize - 1);
+                page = next == null ? Collections.emptyList() : next;
+                index = 0;
+                offset += page.size();
+                last = page.size() < streamPageSize;
+                return !page.isEmpty();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(index++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+    }
+
     @Override
     public Long lSize(String key) {
         return redisTemplate.opsForList().size(key);
@@ -171,9 +383,7 @@ public class RedisServiceImpl implements RedisService {
 
     @Override
     public Long lPush(String key, Object value, long time) {
-        Long index = redisTemplate.opsForList().rightPush(key, value);
-        expire(key, time);
-        return index;
+        return executeScript(RPUSH_EXPIRE_SCRIPT, key, time, serializeValues(value));
     }
 
     @Override
@@ -183,13 +393,153 @@ public class RedisServiceImpl implements RedisService {
 
     @Override
     public Long lPushAll(String key, Long time, Object... values) {
-        Long count = redisTemplate.opsForList().rightPushAll(key, values);
-        expire(key, time);
-        return count;
+        return executeScript(RPUSH_EXPIRE_SCRIPT, key, time, serializeValues(values));
     }
 
     @Override
     public Long lRemove(String key, long count, Object value) {
         return redisTemplate.opsForList().remove(key, count, value);
     }
+
+    /**
+     * 执行修改key的操作，修改前后都清除本节点的进程内缓存：
+     * 修改前清除保证修改期间本线程不会读到旧值，修改后清除保证修改期间并发读取回填的旧值不会留在本地缓存中
+     */
+    private <T> T write(String key, Supplier<T> operation) {
+        invalidateLocal(key);
+        try {
+            return operation.get();
+        } finally {
+            invalidateLocal(key);
+        }
+    }
+
+    private void write(String key, Runnable operation) {
+        write(key, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    private <T> T write(Collection<String> keys, Supplier<T> operation) {
+        keys.forEach(this::invalidateLocal);
+        try {
+            return operation.get();
+        } finally {
+            keys.forEach(this::invalidateLocal);
+        }
+    }
+
+    private void write(Collection<String> keys, Runnable operation) {
+        write(keys, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * 读取热点key，进程内缓存中保存序列化后的字节，每次读取反序列化出新的对象，调用方修改返回值不会影响其他调用方
+     */
+    private Object readHotKey(String key, Supplier<Object> loader) {
+        byte[] bytes = (byte[]) hotKeyDetector.getLocal(key);
+        if (bytes != null) {
+            return redisSerializer.deserialize(bytes);
+        }
+        Object value = loader.get();
+        if (value != null) {
+            hotKeyDetector.putLocal(key, redisSerializer.serialize(value));
+        }
+        return value;
+    }
+
+    /**
+     * 通知所有节点清空二级缓存和热点key的进程内缓存，无法确定被删除的key属于哪个缓存，只能全部清空
+     * 客户端缓存由Redis在key被删除时推送失效消息，不需要额外通知
+     */
+    private void publishClearAll() {
+        try {
+            stringRedisTemplate.convertAndSend(NearCacheManager.INVALIDATION_CHANNEL, NearCacheManager.CLEAR_ALL_MESSAGE);
+        } catch (Exception e) {
+            //通知失败时其他节点的进程内缓存最迟在TTL到期后失效
+            LOGGER.warn("publish cache clear failed", e);
+        }
+    }
+
+    private void invalidateLocal(String key) {
+        hotKeyDetector.invalidate(key);
+        if (trackingRedisCache != null) {
+            trackingRedisCache.invalidate(key);
+        }
+    }
+
+    /**
+     * UNLINK只在主线程中摘除key，内存在后台线程中释放，删除大key也不会阻塞其他命令
+     */
+    private long unlinkBatch(List<String> batch) {
+        Long count = write(batch, () -> redisTemplate.unlink(batch));
+        batch.clear();
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * 删除速度超过max-rate（个/秒）时暂停，把删除压力分摊到更长的时间内
+     */
+    private void throttle(long deleted, long start) {
+        long expectedNanos = deleted * TimeUnit.SECONDS.toNanos(1) / invalidateMaxRate;
+        long sleepNanos = expectedNanos - (System.nanoTime() - start);
+        if (sleepNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("delete by pattern interrupted", e);
+            }
+        }
+    }
+
+    /**
+     * 执行写入并设置过期时间的脚本，写入和过期在一次网络往返中原子完成
+     * 参数已按RedisTemplate的序列化器转为字节数组，脚本参数不再二次序列化
+     */
+    private <T> T executeScript(RedisScript<T> script, String key, long time, byte[]... values) {
+        byte[][] args = new byte[values.length + 1][];
+        args[0] = String.valueOf(time).getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(values, 0, args, 1, values.length);
+        return executeScript(script, key, args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T executeScript(RedisScript<T> script, String key, byte[]... args) {
+        return redisTemplate.execute(script, RedisSerializer.byteArray(),
+                (RedisSerializer<T>) redisTemplate.getValueSerializer(), Collections.singletonList(key), (Object[]) args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeHashKey(String hashKey) {
+        return ((RedisSerializer<String>) redisTemplate.getHashKeySerializer()).serialize(hashKey);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] serializeHashValue(Object value) {
+        return ((RedisSerializer<Object>) redisTemplate.getHashValueSerializer()).serialize(value);
+    }
+
+    private byte[][] serializeHashEntries(Map<String, Object> map) {
+        List<byte[]> args = new ArrayList<>(map.size() * 2);
+        map.forEach((hashKey, value) -> {
+            args.add(serializeHashKey(hashKey));
+            args.add(serializeHashValue(value));
+        });
+        return args.toArray(new byte[0][]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[][] serializeValues(Object... values) {
+        RedisSerializer<Object> serializer = (RedisSerializer<Object>) redisTemplate.getValueSerializer();
+        byte[][] bytes = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = serializer.serialize(values[i]);
+        }
+        return bytes;
+    }
 }
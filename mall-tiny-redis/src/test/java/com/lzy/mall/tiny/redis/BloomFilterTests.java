@@ -0,0 +1,77 @@
+package com.lzy.mall.tiny.redis;
+
+import com.lzy.mall.tiny.component.BloomFilter;
+import com.lzy.mall.tiny.component.LocalBloomFilter;
+import com.lzy.mall.tiny.component.RedisBloomFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 布隆过滤器的初始化标记：未初始化或数据丢失后新增元素，不会拦截已存在的元素
+ * Redis实现需要本地的Redis服务，连接不上时跳过
+ */
+class BloomFilterTests {
+    private static final String KEY = "test:bloom:brand";
+    private static final List<Long> EXISTING_IDS = Arrays.asList(1L, 2L, 3L);
+
+    @Test
+    void localCreateBeforeInitialize() {
+        assertCreateAfterLost(new LocalBloomFilter(1000, 0.001));
+    }
+
+    @Test
+    void redisCreateAfterFilterLost() {
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", 6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        try {
+            assumeTrue(isReachable(connectionFactory), "redis is not available");
+            StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+            RedisBloomFilter bloomFilter = new RedisBloomFilter(stringRedisTemplate, KEY, 1000, 0.001);
+            bloomFilter.initialize(EXISTING_IDS);
+            assertTrue(bloomFilter.isInitialized());
+            assertFalse(bloomFilter.mightContain(100L));
+            //模拟Redis重启或淘汰了过滤器
+            stringRedisTemplate.delete(KEY);
+            assertCreateAfterLost(bloomFilter);
+            stringRedisTemplate.delete(KEY);
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    /**
+     * 过滤器为空时新增一个元素，已存在的元素仍然可能存在，重新初始化后判断结果生效
+     */
+    private static void assertCreateAfterLost(BloomFilter bloomFilter) {
+        assertFalse(bloomFilter.isInitialized());
+        bloomFilter.add(100L);
+        assertFalse(bloomFilter.isInitialized());
+        assertTrue(bloomFilter.mightContain(1L));
+        assertEquals(Arrays.asList(true, true, true), bloomFilter.mightContainAll(EXISTING_IDS));
+
+        bloomFilter.initialize(EXISTING_IDS);
+        assertTrue(bloomFilter.isInitialized());
+        assertEquals(Arrays.asList(true, true, true, true), bloomFilter.mightContainAll(Arrays.asList(1L, 2L, 3L, 100L)));
+        assertFalse(bloomFilter.mightContain(200L));
+    }
+
+    private static boolean isReachable(LettuceConnectionFactory connectionFactory) {
+        try {
+            connectionFactory.getConnection().close();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
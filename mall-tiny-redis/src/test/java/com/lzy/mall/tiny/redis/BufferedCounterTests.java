@@ -0,0 +1,179 @@
+package com.lzy.mall.tiny.redis;
+
+import com.lzy.mall.tiny.component.BufferedCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 异步计数器在并发累加、提交和空闲清理同时进行时不丢失增量，Redis使用模拟对象代替
+ */
+class BufferedCounterTests {
+    private static final int THREADS = 8;
+    private static final int KEYS = 64;
+
+    //模拟Redis中各个key的计数
+    private final Map<String, AtomicLong> redis = new ConcurrentHashMap<>();
+    private BufferedCounter bufferedCounter;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        ValueOperations<String, Object> valueOperations = mock(ValueOperations.class);
+        when(valueOperations.increment(anyString(), anyLong())).thenAnswer(invocation -> redis
+                .computeIfAbsent(invocation.getArgument(0), k -> new AtomicLong())
+                .addAndGet(invocation.getArgument(1)));
+        HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        when(hashOperations.increment(anyString(), any(), anyLong())).thenAnswer(invocation -> redis
+                .computeIfAbsent(invocation.getArgument(0) + ":" + invocation.getArgument(1), k -> new AtomicLong())
+                .addAndGet(invocation.getArgument(2)));
+        RedisOperations<String, Object> operations = mock(RedisOperations.class);
+        when(operations.opsForValue()).thenReturn(valueOperations);
+        when(operations.<Object, Object>opsForHash()).thenReturn(hashOperations);
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.<SessionCallback<Object>>getArgument(0).execute(operations);
+            return Collections.emptyList();
+        });
+
+        bufferedCounter = new BufferedCounter();
+        ReflectionTestUtils.setField(bufferedCounter, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(bufferedCounter, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(bufferedCounter, "flushInterval", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(bufferedCounter, "maxKeys", KEYS / 2);
+        bufferedCounter.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        bufferedCounter.destroy();
+    }
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong expected = new AtomicLong();
+        try {
+            //除定时提交外再不停地手动提交，让空闲的key尽快被清理
+            Future<?> flusher = executor.submit(() -> {
+                start.await();
+                while (running.get()) {
+                    bufferedCounter.flush();
+                }
+                return null;
+            });
+            Future<?>[] writers = new Future<?>[THREADS];
+            for (int i = 0; i < THREADS; i++) {
+                writers[i] = executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int n = 0; n < 20000; n++) {
+                        //活跃的key随时间轮换，每个key空闲一段时间后再次被累加，与空闲清理发生竞争
+                        int key = (n / 200 * 4 + random.nextInt(8)) % KEYS;
+                        if (key % 2 == 0) {
+                            bufferedCounter.incr("counter:" + key, 1);
+                        } else {
+                            bufferedCounter.hIncr("counter:hash", String.valueOf(key), 1);
+                        }
+                        expected.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            running.set(false);
+            flusher.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        //等待定时提交结束并提交剩余的增量
+        bufferedCounter.destroy();
+        long flushed = redis.values().stream().mapToLong(AtomicLong::get).sum();
+        assertEquals(expected.get(), flushed);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void partialPipelineFailureRetriesOnlyFailedKeys() throws Exception {
+        Map<String, AtomicLong> store = new ConcurrentHashMap<>();
+        List<Object> results = new ArrayList<>();
+        AtomicBoolean failSecond = new AtomicBoolean(true);
+        //第一次提交时管道中的第二条命令失败，其余命令已经写入
+        ValueOperations<String, Object> valueOperations = mock(ValueOperations.class);
+        when(valueOperations.increment(anyString(), anyLong())).thenAnswer(invocation -> {
+            if (failSecond.get() && results.size() == 1) {
+                results.add(new RedisSystemException("connection reset", null));
+            } else {
+                results.add(store.computeIfAbsent(invocation.getArgument(0), k -> new AtomicLong())
+                        .addAndGet(invocation.getArgument(1)));
+            }
+            return null;
+        });
+        RedisOperations<String, Object> operations = mock(RedisOperations.class);
+        when(operations.opsForValue()).thenReturn(valueOperations);
+        RedisTemplate<String, Object> redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            results.clear();
+            invocation.<SessionCallback<Object>>getArgument(0).execute(operations);
+            if (failSecond.getAndSet(false)) {
+                throw new RedisPipelineException(new RuntimeException("partial failure"), new ArrayList<>(results));
+            }
+            return new ArrayList<>(results);
+        });
+        BufferedCounter counter = new BufferedCounter();
+        ReflectionTestUtils.setField(counter, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(counter, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(counter, "flushInterval", Duration.ofHours(1));
+        ReflectionTestUtils.setField(counter, "maxKeys", KEYS);
+        counter.afterPropertiesSet();
+        try {
+            counter.incr("counter:a", 1);
+            counter.incr("counter:b", 2);
+            counter.incr("counter:c", 3);
+            counter.flush();
+            assertEquals(2, store.size());
+            counter.flush();
+        } finally {
+            counter.destroy();
+        }
+        assertEquals(1, store.get("counter:a").get());
+        assertEquals(2, store.get("counter:b").get());
+        assertEquals(3, store.get("counter:c").get());
+    }
+}
@@ -0,0 +1,114 @@
+package com.lzy.mall.tiny.redis;
+
+import cn.hutool.core.bean.BeanUtil;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import com.lzy.mall.tiny.component.KryoRedisSerializer;
+import com.lzy.mall.tiny.component.TaggedFieldKryoSerializer;
+import com.lzy.mall.tiny.config.RedisConfig;
+import com.lzy.mall.tiny.mbg.model.PmsBrand;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Kryo序列化器的编解码正确性和字段增删后的兼容性
+ */
+class KryoRedisSerializerTests {
+    //与KryoRedisSerializer中注册的品牌编号一致
+    private static final int BRAND_REGISTRATION_ID = 100;
+
+    private final KryoRedisSerializer serializer = new KryoRedisSerializer();
+
+    @Test
+    void roundTrip() {
+        PmsBrand brand = createBrand();
+        PmsBrand decoded = (PmsBrand) serializer.deserialize(serializer.serialize(brand));
+        assertEquals(BeanUtil.beanToMap(brand), BeanUtil.beanToMap(decoded));
+
+        PmsBrand partial = new PmsBrand();
+        partial.setId(2L);
+        PmsBrand decodedPartial = (PmsBrand) serializer.deserialize(serializer.serialize(partial));
+        assertEquals(2L, decodedPartial.getId());
+        assertNull(decodedPartial.getName());
+
+        List<PmsBrand> list = new ArrayList<>();
+        list.add(brand);
+        list.add(partial);
+        @SuppressWarnings("unchecked")
+        List<PmsBrand> decodedList = (List<PmsBrand>) serializer.deserialize(serializer.serialize(list));
+        assertEquals(2, decodedList.size());
+        assertEquals(brand.getBrandStory(), decodedList.get(0).getBrandStory());
+    }
+
+    @Test
+    void smallerThanJson() {
+        PmsBrand brand = createBrand();
+        RedisSerializer<Object> jsonSerializer = RedisConfig.createRedisSerializer("json");
+        int jsonSize = jsonSerializer.serialize(brand).length;
+        int kryoSize = serializer.serialize(brand).length;
+        //不写字段名和类名，每个字段只多一个字节头
+        assertTrue(kryoSize < jsonSize * 0.7, "kryo:" + kryoSize + ", json:" + jsonSize);
+    }
+
+    @Test
+    void readsDataWrittenWithAddedField() {
+        //新版本增加了编号为12~14的字段，当前版本不认识，读取时跳过
+        TaggedFieldKryoSerializer<PmsBrand> newer = brandFields()
+                .stringField(12, PmsBrand::getLogo, PmsBrand::setLogo)
+                .intField(13, PmsBrand::getSort, PmsBrand::setSort)
+                .stringField(14, PmsBrand::getBrandStory, PmsBrand::setBrandStory);
+        PmsBrand brand = createBrand();
+        PmsBrand decoded = (PmsBrand) serializer.deserialize(write(newer, brand));
+        assertEquals(brand.getId(), decoded.getId());
+        assertEquals(brand.getName(), decoded.getName());
+        assertNull(decoded.getLogo());
+        assertNull(decoded.getSort());
+    }
+
+    @Test
+    void readsDataWrittenWithRemovedField() {
+        //旧版本只有前两个字段
+        PmsBrand brand = createBrand();
+        PmsBrand decoded = (PmsBrand) serializer.deserialize(write(brandFields(), brand));
+        assertEquals(brand.getId(), decoded.getId());
+        assertEquals(brand.getName(), decoded.getName());
+        assertNull(decoded.getBrandStory());
+    }
+
+    private static TaggedFieldKryoSerializer<PmsBrand> brandFields() {
+        return new TaggedFieldKryoSerializer<>(PmsBrand::new)
+                .longField(1, PmsBrand::getId, PmsBrand::setId)
+                .stringField(2, PmsBrand::getName, PmsBrand::setName);
+    }
+
+    private static byte[] write(TaggedFieldKryoSerializer<PmsBrand> brandSerializer, PmsBrand brand) {
+        Kryo kryo = new Kryo();
+        kryo.register(PmsBrand.class, brandSerializer, BRAND_REGISTRATION_ID);
+        Output output = new Output(512, -1);
+        kryo.writeClassAndObject(output, brand);
+        return output.toBytes();
+    }
+
+    static PmsBrand createBrand() {
+        PmsBrand brand = new PmsBrand();
+        brand.setId(1L);
+        brand.setName("万和");
+        brand.setFirstLetter("W");
+        brand.setSort(0);
+        brand.setFactoryStatus(1);
+        brand.setShowStatus(1);
+        brand.setProductCount(100);
+        brand.setProductCommentCount(1000);
+        brand.setLogo("http://macro-oss.oss-cn-shenzhen.aliyuncs.com/mall/images/20180607/timg(5).jpg");
+        brand.setBigPic("http://macro-oss.oss-cn-shenzhen.aliyuncs.com/mall/images/20180607/bigpic.jpg");
+        brand.setBrandStory("万和成立于1993年8月，总部位于广东顺德国家级高新技术开发区内，是国内生产规模最大的燃气具专业制造企业。");
+        return brand;
+    }
+}
@@ -0,0 +1,84 @@
+package com.lzy.mall.tiny.redis;
+
+import com.lzy.mall.tiny.component.LocalCache;
+import com.lzy.mall.tiny.component.LocalCacheManager;
+import com.lzy.mall.tiny.config.RedisCacheProperties;
+import com.lzy.mall.tiny.config.RedisConfig;
+import com.lzy.mall.tiny.service.impl.OffHeapRedisServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * offheap profile下的进程内缓存：不缓存空结果、条目数有上限、按写入时间过期，按模式删除时一起清理
+ */
+class LocalCacheTests {
+    private static final int MAX_SIZE = 10;
+
+    @Test
+    void nullResultIsNotCached() {
+        LocalCache cache = (LocalCache) newCacheManager(Duration.ofMinutes(1)).getCache(RedisConfig.REDIS_KEY_DATABASE);
+        //随机ID查询不存在的数据，不会占用缓存
+        for (int i = 0; i < 1000; i++) {
+            assertNull(cache.get("pms:brand:" + i, () -> null));
+        }
+        assertEquals(0, cache.size());
+        assertEquals("brand", cache.get("pms:brand:1", () -> "brand"));
+        assertEquals("brand", cache.get("pms:brand:1", () -> "other"));
+    }
+
+    @Test
+    void sizeIsBounded() {
+        LocalCache cache = (LocalCache) newCacheManager(Duration.ofMinutes(1)).getCache(RedisConfig.REDIS_KEY_DATABASE);
+        for (int i = 0; i < MAX_SIZE * 3; i++) {
+            cache.put("pms:brand:" + i, "brand" + i);
+        }
+        assertTrue(cache.size() <= MAX_SIZE);
+    }
+
+    @Test
+    void entryExpiresAfterTtl() throws InterruptedException {
+        Cache cache = newCacheManager(Duration.ofMillis(100)).getCache(RedisConfig.REDIS_KEY_DATABASE);
+        cache.put("pms:brand:1", "brand");
+        assertEquals("brand", cache.get("pms:brand:1", String.class));
+        Thread.sleep(200);
+        assertNull(cache.get("pms:brand:1"));
+    }
+
+    @Test
+    void delByPatternEvictsSpringCache() {
+        LocalCacheManager cacheManager = newCacheManager(Duration.ofMinutes(1));
+        Cache cache = cacheManager.getCache(RedisConfig.REDIS_KEY_DATABASE);
+        cache.put("pms:brand:1", "brand1");
+        cache.put("pms:brand:2", "brand2");
+        cache.put("pms:product:1", "product1");
+        OffHeapRedisServiceImpl redisService = new OffHeapRedisServiceImpl();
+        ReflectionTestUtils.setField(redisService, "redisSerializer", RedisConfig.createRedisSerializer("json"));
+        ReflectionTestUtils.setField(redisService, "localCacheManager", cacheManager);
+        ReflectionTestUtils.setField(redisService, "wheelSlots", 64);
+        ReflectionTestUtils.setField(redisService, "tickMillis", 10L);
+        redisService.init();
+        try {
+            redisService.set("mall::pms:brand:3", "brand3");
+            //与Redis中的key格式一致：缓存名称::缓存key
+            assertEquals(3L, redisService.delByPattern("mall::pms:brand:*"));
+            assertNull(cache.get("pms:brand:1"));
+            assertNull(cache.get("pms:brand:2"));
+            assertEquals("product1", cache.get("pms:product:1", String.class));
+        } finally {
+            redisService.destroy();
+        }
+    }
+
+    private static LocalCacheManager newCacheManager(Duration ttl) {
+        RedisCacheProperties cacheProperties = new RedisCacheProperties();
+        cacheProperties.getDefaults().setTtl(ttl);
+        return new LocalCacheManager(cacheProperties, MAX_SIZE);
+    }
+}
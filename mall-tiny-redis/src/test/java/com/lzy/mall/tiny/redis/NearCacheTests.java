@@ -0,0 +1,112 @@
+package com.lzy.mall.tiny.redis;
+
+import com.lzy.mall.tiny.component.NearCacheManager;
+import com.lzy.mall.tiny.component.SingleFlightCacheManager;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * 二级缓存的读取、指标和跨节点失效，L2使用进程内缓存代替Redis
+ */
+class NearCacheTests {
+    private static final String CACHE_NAME = "mall";
+
+    private ConcurrentMapCacheManager remoteCacheManager;
+    private StringRedisTemplate stringRedisTemplate;
+    private MeterRegistry meterRegistry;
+    private NearCacheManager nearCacheManager;
+
+    @BeforeEach
+    void setUp() {
+        remoteCacheManager = new ConcurrentMapCacheManager(CACHE_NAME);
+        stringRedisTemplate = mock(StringRedisTemplate.class);
+        meterRegistry = new SimpleMeterRegistry();
+        SingleFlightCacheManager l2CacheManager = new SingleFlightCacheManager(remoteCacheManager, stringRedisTemplate,
+                Duration.ofSeconds(5), 0, meterRegistry);
+        nearCacheManager = new NearCacheManager(l2CacheManager, stringRedisTemplate, meterRegistry, 100, 60000);
+    }
+
+    @Test
+    void loaderPathRecordsHitAndMiss() {
+        Cache cache = nearCacheManager.getCache(CACHE_NAME);
+        AtomicInteger loadCount = new AtomicInteger();
+        assertEquals("brand", cache.get("pms:brand:1", () -> {
+            loadCount.incrementAndGet();
+            return "brand";
+        }));
+        //L1命中
+        assertEquals("brand", cache.get("pms:brand:1", () -> "other"));
+        //另一个节点写入L2后，本节点L1未命中、L2命中
+        remoteCacheManager.getCache(CACHE_NAME).put("pms:brand:2", "remote");
+        assertEquals("remote", cache.get("pms:brand:2", () -> "other"));
+
+        assertEquals(1, loadCount.get());
+        assertEquals(1, count("l1", "hit"));
+        assertEquals(2, count("l1", "miss"));
+        assertEquals(1, count("l2", "hit"));
+        assertEquals(1, count("l2", "miss"));
+        assertEquals(3, meterRegistry.get("cache.near.latency").tag("level", "l1").timer().count());
+        assertEquals(2, meterRegistry.get("cache.near.latency").tag("level", "l2").timer().count());
+    }
+
+    @Test
+    void evictPublishesInvalidation() {
+        Cache cache = nearCacheManager.getCache(CACHE_NAME);
+        cache.put("pms:brand:1", "brand");
+        cache.evict("pms:brand:1");
+        assertEquals(null, remoteCacheManager.getCache(CACHE_NAME).get("pms:brand:1"));
+        verify(stringRedisTemplate).convertAndSend(eq(NearCacheManager.INVALIDATION_CHANNEL), anyString());
+    }
+
+    @Test
+    void invalidationFromOtherNodeEvictsLocalCopy() {
+        Cache cache = nearCacheManager.getCache(CACHE_NAME);
+        cache.put("pms:brand:1", "old");
+        //其他节点修改了L2，本节点L1仍然是旧值
+        remoteCacheManager.getCache(CACHE_NAME).put("pms:brand:1", "new");
+        assertEquals("old", cache.get("pms:brand:1").get());
+
+        nearCacheManager.onMessage(message("other-node\n" + CACHE_NAME + "\npms:brand:1"), null);
+        assertEquals("new", cache.get("pms:brand:1").get());
+
+        //key为空时清空整个缓存
+        remoteCacheManager.getCache(CACHE_NAME).put("pms:brand:1", "newer");
+        nearCacheManager.onMessage(message("other-node\n" + CACHE_NAME + "\n"), null);
+        assertEquals("newer", cache.get("pms:brand:1").get());
+    }
+
+    @Test
+    void clearAllMessageEvictsEveryCache() {
+        Cache cache = nearCacheManager.getCache(CACHE_NAME);
+        cache.put("pms:brand:1", "old");
+        //按模式删除了Redis中的key，本节点发出的清空通知也要处理
+        remoteCacheManager.getCache(CACHE_NAME).evict("pms:brand:1");
+        nearCacheManager.onMessage(message(NearCacheManager.CLEAR_ALL_MESSAGE), null);
+        assertEquals(null, cache.get("pms:brand:1"));
+    }
+
+    private double count(String level, String result) {
+        return meterRegistry.get("cache.near.gets").tag("level", level).tag("result", result).counter().count();
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(NearCacheManager.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,148 @@
+package com.lzy.mall.tiny.redis;
+
+import com.lzy.mall.tiny.config.RedisConfig;
+import com.lzy.mall.tiny.service.impl.OffHeapRedisServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 进程内RedisService与Redis命令语义一致，覆盖过期时间、计数、Hash、Set和List
+ */
+class OffHeapRedisServiceTests {
+    private OffHeapRedisServiceImpl redisService;
+
+    @BeforeEach
+    void setUp() {
+        redisService = new OffHeapRedisServiceImpl();
+        ReflectionTestUtils.setField(redisService, "redisSerializer", RedisConfig.createRedisSerializer("json"));
+        ReflectionTestUtils.setField(redisService, "wheelSlots", 64);
+        ReflectionTestUtils.setField(redisService, "tickMillis", 10L);
+        redisService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisService.destroy();
+    }
+
+    @Test
+    void ttl() throws InterruptedException {
+        //与TTL命令一致，key不存在返回-2，没有过期时间返回-1
+        assertEquals(-2L, redisService.getExpire("ttl:missing"));
+        redisService.set("ttl:persist", "value");
+        assertEquals(-1L, redisService.getExpire("ttl:persist"));
+        redisService.set("ttl:key", "value", 100);
+        assertEquals(100L, redisService.getExpire("ttl:key"));
+
+        assertTrue(redisService.expire("ttl:persist", 50));
+        assertEquals(50L, redisService.getExpire("ttl:persist"));
+        assertFalse(redisService.expire("ttl:missing", 50));
+        //过期时间不大于0时直接删除
+        assertTrue(redisService.expire("ttl:key", 0));
+        assertFalse(redisService.hasKey("ttl:key"));
+
+        //到期后读取不到，时间轮也会删除
+        redisService.set("ttl:short", "value", 1);
+        Thread.sleep(1100);
+        assertNull(redisService.get("ttl:short"));
+        assertEquals(-2L, redisService.getExpire("ttl:short"));
+    }
+
+    @Test
+    void incr() {
+        assertEquals(1L, redisService.incr("incr:key", 1));
+        assertEquals(6L, redisService.incr("incr:key", 5));
+        assertEquals(4L, redisService.decr("incr:key", 2));
+        assertEquals(4, ((Number) redisService.get("incr:key")).intValue());
+        //与INCR一致，递增不改变原有的过期时间
+        redisService.set("incr:ttl", 10, 100);
+        assertEquals(11L, redisService.incr("incr:ttl", 1));
+        assertEquals(100L, redisService.getExpire("incr:ttl"));
+
+        redisService.set("incr:text", "abc");
+        InvalidDataAccessApiUsageException e = assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> redisService.incr("incr:text", 1));
+        assertTrue(e.getMessage().startsWith("ERR"));
+        redisService.hSet("incr:hash", "field", 1);
+        e = assertThrows(InvalidDataAccessApiUsageException.class, () -> redisService.incr("incr:hash", 1));
+        assertTrue(e.getMessage().startsWith("WRONGTYPE"));
+    }
+
+    @Test
+    void hash() {
+        redisService.hSet("hash:key", "name", "brand");
+        assertEquals("brand", redisService.hGet("hash:key", "name"));
+        assertNull(redisService.hGet("hash:key", "missing"));
+        assertEquals(3L, redisService.hIncr("hash:key", "count", 3L));
+        assertEquals(1L, redisService.hDecr("hash:key", "count", 2L));
+        assertEquals(Arrays.asList("brand", null), redisService.hMGet("hash:key", Arrays.asList("name", "missing")));
+
+        redisService.hSetAll("hash:key", Collections.singletonMap("logo", "logo.png"));
+        Map<Object, Object> all = redisService.hGetAll("hash:key");
+        assertEquals(3, all.size());
+        assertEquals("logo.png", all.get("logo"));
+
+        //删除最后一个属性后key也被删除
+        redisService.hDel("hash:key", "name", "count", "logo");
+        assertFalse(redisService.hasKey("hash:key"));
+        assertTrue(redisService.hGetAll("hash:key").isEmpty());
+
+        redisService.set("hash:string", "value");
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> redisService.hGet("hash:string", "name"));
+    }
+
+    @Test
+    void set() {
+        //与SADD一致，返回新加入的元素数量
+        assertEquals(2L, redisService.sAdd("set:key", "a", "b"));
+        assertEquals(1L, redisService.sAdd("set:key", "b", "c"));
+        assertEquals(3L, redisService.sSize("set:key"));
+        assertTrue(redisService.sIsMember("set:key", "a"));
+        assertFalse(redisService.sIsMember("set:key", "d"));
+
+        assertEquals(1L, redisService.sRemove("set:key", "a", "d"));
+        assertEquals(2L, redisService.sSize("set:key"));
+        assertEquals(2L, redisService.sRemove("set:key", "b", "c"));
+        assertFalse(redisService.hasKey("set:key"));
+        assertEquals(0L, redisService.sSize("set:key"));
+        assertEquals(0L, redisService.sRemove("set:key", "a"));
+    }
+
+    @Test
+    void list() {
+        assertEquals(5L, redisService.lPushAll("list:key", "a", "b", "a", "c", "a"));
+        assertEquals(Arrays.asList("a", "b", "a", "c", "a"), redisService.lRange("list:key", 0, -1));
+        //负数索引从尾部开始，超出范围时截断
+        assertEquals(Arrays.asList("c", "a"), redisService.lRange("list:key", -2, -1));
+        assertEquals(Arrays.asList("a", "b"), redisService.lRange("list:key", -100, 1));
+        assertEquals(Collections.emptyList(), redisService.lRange("list:key", 3, 1));
+        assertEquals("c", redisService.lIndex("list:key", -2));
+        assertNull(redisService.lIndex("list:key", 5));
+
+        //count小于0从尾部开始删除
+        assertEquals(1L, redisService.lRemove("list:key", -1, "a"));
+        assertEquals(Arrays.asList("a", "b", "a", "c"), redisService.lRange("list:key", 0, -1));
+        assertEquals(1L, redisService.lRemove("list:key", 1, "a"));
+        assertEquals(Arrays.asList("b", "a", "c"), redisService.lRange("list:key", 0, -1));
+        //count等于0删除全部
+        redisService.lPush("list:key", "a");
+        assertEquals(2L, redisService.lRemove("list:key", 0, "a"));
+        List<Object> values = redisService.lRange("list:key", 0, -1);
+        assertEquals(Arrays.asList("b", "c"), values);
+        assertEquals(2L, redisService.lSize("list:key"));
+    }
+}
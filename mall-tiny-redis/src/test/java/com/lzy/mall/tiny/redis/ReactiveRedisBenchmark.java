@@ -0,0 +1,63 @@
+package com.lzy.mall.tiny.redis;
+
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 高并发下阻塞与非阻塞读取的耗时对比，需要本地的Redis服务
+ * 手动运行main方法，参数依次为请求数、非阻塞方式的并发数、阻塞方式的线程数，不包含在mvn test中
+ * 两种方式都直接使用RedisTemplate，不经过指标切面和热点key缓存，只对比线程模型的差异
+ */
+public class ReactiveRedisBenchmark {
+    private static final String KEY = "redis:load:test";
+
+    public static void main(String[] args) throws InterruptedException {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", 6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        try {
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+            ReactiveStringRedisTemplate reactiveRedisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+            redisTemplate.opsForValue().set(KEY, "load-test");
+            //阻塞方式：与Tomcat相同，每个进行中的请求占用一个线程，并发数受线程数限制
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            long start = System.nanoTime();
+            try {
+                List<Callable<Object>> tasks = new ArrayList<>(requests);
+                for (int i = 0; i < requests; i++) {
+                    tasks.add(() -> redisTemplate.hasKey(KEY));
+                }
+                executor.invokeAll(tasks);
+            } finally {
+                executor.shutdownNow();
+            }
+            print("blocking", threads, System.nanoTime() - start, requests);
+            //非阻塞方式：同时发出concurrency个请求，等待响应期间不占用线程，只使用Lettuce的IO线程（默认为CPU核数）
+            start = System.nanoTime();
+            Flux.range(0, requests)
+                    .flatMap(i -> reactiveRedisTemplate.hasKey(KEY), concurrency)
+                    .blockLast();
+            print("reactive", Runtime.getRuntime().availableProcessors(), System.nanoTime() - start, requests);
+            redisTemplate.delete(KEY);
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private static void print(String mode, int threads, long nanos, int requests) {
+        long millis = Math.max(1, nanos / 1_000_000);
+        System.out.printf("%s: threads %d, %d ms, %d qps%n", mode, threads, millis, requests * 1000L / millis);
+    }
+}
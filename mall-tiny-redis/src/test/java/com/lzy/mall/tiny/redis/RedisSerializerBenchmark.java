@@ -0,0 +1,39 @@
+package com.lzy.mall.tiny.redis;
+
+import com.lzy.mall.tiny.config.RedisConfig;
+import com.lzy.mall.tiny.mbg.model.PmsBrand;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * 对比JSON与Kryo序列化器的体积和编解码耗时，不依赖Redis服务
+ * 手动运行main方法，不包含在mvn test中；编解码的正确性由{@link KryoRedisSerializerTests}验证
+ */
+public class RedisSerializerBenchmark {
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 200000;
+
+    public static void main(String[] args) {
+        PmsBrand brand = KryoRedisSerializerTests.createBrand();
+        benchmark("json", RedisConfig.createRedisSerializer("json"), brand);
+        benchmark("kryo", RedisConfig.createRedisSerializer(RedisConfig.SERIALIZER_FORMAT_KRYO), brand);
+    }
+
+    private static void benchmark(String format, RedisSerializer<Object> serializer, PmsBrand brand) {
+        byte[] bytes = serializer.serialize(brand);
+        for (int i = 0; i < WARMUP; i++) {
+            serializer.deserialize(serializer.serialize(brand));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            bytes = serializer.serialize(brand);
+        }
+        long encodeNanos = (System.nanoTime() - start) / ITERATIONS;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializer.deserialize(bytes);
+        }
+        long decodeNanos = (System.nanoTime() - start) / ITERATIONS;
+        System.out.printf("%s: %d bytes/entry, encode %d ns/op, decode %d ns/op%n",
+                format, bytes.length, encodeNanos, decodeNanos);
+    }
+}
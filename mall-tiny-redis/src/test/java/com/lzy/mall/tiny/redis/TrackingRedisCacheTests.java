@@ -0,0 +1,102 @@
+package com.lzy.mall.tiny.redis;
+
+import com.lzy.mall.tiny.component.TrackingRedisCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 客户端缓存的失效和容量限制，需要本地的Redis 6以上服务，连接不上时跳过
+ */
+class TrackingRedisCacheTests {
+    private static final String KEY_PREFIX = "test:tracking:";
+    private static final int MAX_KEYS = 2;
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate<String, Object> redisTemplate;
+    private MeterRegistry meterRegistry;
+    private TrackingRedisCache trackingRedisCache;
+
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", 6379));
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        assumeTrue(isReachable(), "redis is not available");
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setDefaultSerializer(StringRedisSerializer.UTF_8);
+        redisTemplate.afterPropertiesSet();
+        meterRegistry = new SimpleMeterRegistry();
+        trackingRedisCache = new TrackingRedisCache();
+        ReflectionTestUtils.setField(trackingRedisCache, "redisConnectionFactory", connectionFactory);
+        ReflectionTestUtils.setField(trackingRedisCache, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(trackingRedisCache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(trackingRedisCache, "maxKeys", MAX_KEYS);
+        trackingRedisCache.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (trackingRedisCache != null) {
+            redisTemplate.delete(redisTemplate.keys(KEY_PREFIX + "*"));
+            trackingRedisCache.destroy();
+        }
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void writeFromOtherConnectionInvalidatesLocalCopy() throws InterruptedException {
+        String key = KEY_PREFIX + "value";
+        redisTemplate.opsForValue().set(key, "old");
+        assertEquals("old", trackingRedisCache.get(key));
+        assertEquals("old", trackingRedisCache.get(key));
+        assertEquals(1, count("hit"));
+
+        //通过RedisTemplate的连接写入，不经过TrackingRedisCache，只能依靠服务端推送失效
+        redisTemplate.opsForValue().set(key, "new");
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!"new".equals(trackingRedisCache.get(key)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("new", trackingRedisCache.get(key));
+    }
+
+    @Test
+    void localCacheIsBounded() {
+        for (int i = 0; i < MAX_KEYS * 3; i++) {
+            String key = KEY_PREFIX + i;
+            redisTemplate.opsForValue().set(key, String.valueOf(i));
+            assertEquals(String.valueOf(i), trackingRedisCache.get(key));
+        }
+        assertTrue(trackingRedisCache.size() <= MAX_KEYS);
+        //最近读取的key仍在本地缓存中
+        double hits = count("hit");
+        trackingRedisCache.get(KEY_PREFIX + (MAX_KEYS * 3 - 1));
+        assertEquals(hits + 1, count("hit"));
+    }
+
+    private boolean isReachable() {
+        try {
+            connectionFactory.getConnection().close();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private double count(String result) {
+        return meterRegistry.get("redis.tracking.gets").tag("result", result).counter().count();
+    }
+}